@@ -0,0 +1,238 @@
+package box2dLight;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.ChainShape;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.EdgeShape;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.physics.box2d.Transform;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Journal of the bodies that changed between two {@link RayHandler}
+ * updates.
+ *
+ * <p>Every update the transform of each body is compared with the one
+ * recorded last time. Bounds of the bodies that moved, woke up, got their
+ * fixtures changed, were created or destroyed are stored (both old and new
+ * ones), so lights can tell if any of their rays could be affected.
+ *
+ * <p>Journal is not modified by the queries, so once updated it can be
+ * queried from several threads at once.
+ */
+class BodyJournal {
+
+	/** Number of the journal update, grows by one on each update **/
+	int frame = 0;
+
+	/** Changed bounds, 4 floats each: minX, minY, maxX, maxY **/
+	final FloatArray changes = new FloatArray();
+	int changeCount = 0;
+
+	final ObjectMap<Body, BodyRecord> records =
+			new ObjectMap<Body, BodyRecord>();
+	final Array<BodyRecord> recordList = new Array<BodyRecord>(false, 16);
+	final Pool<BodyRecord> recordPool = new Pool<BodyRecord>() {
+		@Override
+		protected BodyRecord newObject() {
+			return new BodyRecord();
+		}
+	};
+
+	final Array<Body> tmpBodies = new Array<Body>();
+	final Vector2 tmpVec = new Vector2();
+
+	/** Last known state of a body **/
+	static class BodyRecord {
+		Body body;
+		int frame;
+		boolean active;
+		boolean awake;
+		int fixtureCount;
+		float x, y, angle;
+		float minX, minY, maxX, maxY;
+	}
+
+	/**
+	 * Compares bodies of the world with the recorded ones and stores bounds
+	 * of the changed ones
+	 */
+	void update(World world) {
+		frame++;
+		changes.clear();
+		changeCount = 0;
+
+		world.getBodies(tmpBodies);
+		for (int i = 0; i < tmpBodies.size; i++) {
+			Body body = tmpBodies.get(i);
+			BodyRecord record = records.get(body);
+			if (record == null) {
+				record = recordPool.obtain();
+				record.body = body;
+				records.put(body, record);
+				recordList.add(record);
+				updateRecord(record);
+				addChange(record);
+			} else if (hasChanged(record)) {
+				addChange(record);
+				updateRecord(record);
+				addChange(record);
+			} else {
+				record.awake = body.isAwake();
+			}
+			record.frame = frame;
+		}
+		tmpBodies.clear();
+
+		for (int i = recordList.size - 1; i >= 0; i--) {
+			BodyRecord record = recordList.get(i);
+			if (record.frame == frame) continue;
+
+			addChange(record);
+			records.remove(record.body);
+			recordList.removeIndex(i);
+			record.body = null;
+			recordPool.free(record);
+		}
+	}
+
+	/** Forgets all the recorded bodies **/
+	void clear() {
+		for (BodyRecord record : recordList) {
+			record.body = null;
+			recordPool.free(record);
+		}
+		records.clear();
+		recordList.clear();
+		changes.clear();
+		changeCount = 0;
+	}
+
+	/**
+	 * @return if segment from (x1, y1) to (x2, y2) overlaps any changed
+	 * bounds
+	 */
+	boolean overlapsSegment(float x1, float y1, float x2, float y2) {
+		final float[] c = changes.items;
+		final float minX = Math.min(x1, x2);
+		final float minY = Math.min(y1, y2);
+		final float maxX = Math.max(x1, x2);
+		final float maxY = Math.max(y1, y2);
+		final float dx = x2 - x1;
+		final float dy = y2 - y1;
+		for (int i = 0; i < changeCount * 4; i += 4) {
+			if (c[i] > maxX || c[i + 1] > maxY ||
+					c[i + 2] < minX || c[i + 3] < minY) continue;
+
+			// separating axis of the segment normal
+			final float d1 = dy * (c[i] - x1) - dx * (c[i + 1] - y1);
+			final float d2 = dy * (c[i + 2] - x1) - dx * (c[i + 1] - y1);
+			final float d3 = dy * (c[i] - x1) - dx * (c[i + 3] - y1);
+			final float d4 = dy * (c[i + 2] - x1) - dx * (c[i + 3] - y1);
+			if (d1 > 0f && d2 > 0f && d3 > 0f && d4 > 0f) continue;
+			if (d1 < 0f && d2 < 0f && d3 < 0f && d4 < 0f) continue;
+
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return if given bounds overlap any changed bounds
+	 */
+	boolean overlapsBounds(float minX, float minY, float maxX, float maxY) {
+		final float[] c = changes.items;
+		for (int i = 0; i < changeCount * 4; i += 4) {
+			if (c[i] <= maxX && c[i + 1] <= maxY &&
+					c[i + 2] >= minX && c[i + 3] >= minY) return true;
+		}
+		return false;
+	}
+
+	private boolean hasChanged(BodyRecord record) {
+		final Body body = record.body;
+		if (body.isActive() != record.active) return true;
+		if (!record.active) return false;
+		if (body.isAwake() && !record.awake) return true;
+
+		final Vector2 position = body.getPosition();
+		return position.x != record.x || position.y != record.y ||
+				body.getAngle() != record.angle ||
+				body.getFixtureList().size != record.fixtureCount;
+	}
+
+	private void addChange(BodyRecord record) {
+		if (!record.active || record.minX > record.maxX) return;
+
+		changes.add(record.minX, record.minY, record.maxX, record.maxY);
+		changeCount++;
+	}
+
+	private void updateRecord(BodyRecord record) {
+		final Body body = record.body;
+		final Vector2 position = body.getPosition();
+		final Array<Fixture> fixtureList = body.getFixtureList();
+		record.active = body.isActive();
+		record.awake = body.isAwake();
+		record.x = position.x;
+		record.y = position.y;
+		record.angle = body.getAngle();
+		record.fixtureCount = fixtureList.size;
+		record.minX = Float.MAX_VALUE;
+		record.minY = Float.MAX_VALUE;
+		record.maxX = -Float.MAX_VALUE;
+		record.maxY = -Float.MAX_VALUE;
+		if (!record.active) return;
+
+		final Transform transform = body.getTransform();
+		for (int i = 0; i < fixtureList.size; i++) {
+			Shape shape = fixtureList.get(i).getShape();
+			switch (shape.getType()) {
+			case Polygon: {
+				PolygonShape pShape = (PolygonShape) shape;
+				for (int n = 0; n < pShape.getVertexCount(); n++) {
+					pShape.getVertex(n, tmpVec);
+					addPoint(record, transform.mul(tmpVec), 0f);
+				}
+				break;
+			}
+			case Chain: {
+				ChainShape cShape = (ChainShape) shape;
+				for (int n = 0; n < cShape.getVertexCount(); n++) {
+					cShape.getVertex(n, tmpVec);
+					addPoint(record, transform.mul(tmpVec), 0f);
+				}
+				break;
+			}
+			case Edge: {
+				EdgeShape eShape = (EdgeShape) shape;
+				eShape.getVertex1(tmpVec);
+				addPoint(record, transform.mul(tmpVec), 0f);
+				eShape.getVertex2(tmpVec);
+				addPoint(record, transform.mul(tmpVec), 0f);
+				break;
+			}
+			case Circle: {
+				CircleShape circle = (CircleShape) shape;
+				tmpVec.set(circle.getPosition());
+				addPoint(record, transform.mul(tmpVec), circle.getRadius());
+				break;
+			}
+			}
+		}
+	}
+
+	private void addPoint(BodyRecord record, Vector2 point, float radius) {
+		record.minX = Math.min(record.minX, point.x - radius);
+		record.minY = Math.min(record.minY, point.y - radius);
+		record.maxX = Math.max(record.maxX, point.x + radius);
+		record.maxY = Math.max(record.maxY, point.y + radius);
+	}
+}
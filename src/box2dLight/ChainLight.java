@@ -8,6 +8,7 @@ import com.badlogic.gdx.graphics.Mesh.VertexDataType;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.math.Intersector;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Matrix3;
 import com.badlogic.gdx.math.Rectangle;
@@ -117,21 +118,23 @@ public class ChainLight extends Light {
 		this.chain = (chain != null) ?
 					 new FloatArray(chain) : new FloatArray();
 
-		Mesh.VertexDataType vertexDataType = Mesh.VertexDataType.VertexArray;
-		if (Gdx.gl30 != null) {
-			vertexDataType = VertexDataType.VertexBufferObjectWithVAO;
-		}
+		if (!rayHandler.headless) {
+			Mesh.VertexDataType vertexDataType = Mesh.VertexDataType.VertexArray;
+			if (Gdx.gl30 != null) {
+				vertexDataType = VertexDataType.VertexBufferObjectWithVAO;
+			}
 
-		lightMesh = new Mesh(
-				vertexDataType, false, vertexNum, 0,
-				new VertexAttribute(Usage.Position, 2, "vertex_positions"),
-				new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
-				new VertexAttribute(Usage.Generic, 1, "s"));
-		softShadowMesh = new Mesh(
-				vertexDataType, false, vertexNum * 2,
-				0, new VertexAttribute(Usage.Position, 2, "vertex_positions"),
-				new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
-				new VertexAttribute(Usage.Generic, 1, "s"));
+			lightMesh = new Mesh(
+					vertexDataType, false, vertexNum, 0,
+					new VertexAttribute(Usage.Position, 2, "vertex_positions"),
+					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
+					new VertexAttribute(Usage.Generic, 1, "s"));
+			softShadowMesh = new Mesh(
+					vertexDataType, false, vertexNum * 2,
+					0, new VertexAttribute(Usage.Position, 2, "vertex_positions"),
+					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
+					new VertexAttribute(Usage.Generic, 1, "s"));
+		}
 		setMesh();
 	}
 	
@@ -164,6 +167,18 @@ public class ChainLight extends Light {
 				rayHandler.lightShader, GL20.GL_TRIANGLE_STRIP, 0, vertexNum);
 		}
 	}
+
+	@Override
+	void batch(LightBatch batch) {
+		if (rayHandler.culling && culled) return;
+
+		rayHandler.lightRenderedLastFrame++;
+		batch.addStrip(lightMesh, vertexNum, colorF);
+
+		if (soft && !xray) {
+			batch.addStrip(softShadowMesh, vertexNum, colorF);
+		}
+	}
 	
 	/**
 	 * Draws a polygon, using ray start and end points as vertices
@@ -235,36 +250,65 @@ public class ChainLight extends Light {
 		if (staticLight) dirty = true;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Polygon goes along the rays ends and back along the rays starts
+	 */
+	@Override
+	public int getPolygonVertexCount() {
+		return rayNum * 2;
+	}
+
+	@Override
+	float getPolygonX(int index) {
+		return index < rayNum ? mx[index] : startX[rayNum * 2 - 1 - index];
+	}
+
+	@Override
+	float getPolygonY(int index) {
+		return index < rayNum ? my[index] : startY[rayNum * 2 - 1 - index];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Intensity falls off linearly with the distance from the chain
+	 */
+	@Override
+	public float getIntensity(float x, float y) {
+		if (!contains(x, y)) return 0f;
+
+		float dst = Float.MAX_VALUE;
+		for (int i = 1; i < rayNum; i++) {
+			dst = Math.min(dst, Intersector.distanceSegmentPoint(
+					startX[i - 1], startY[i - 1], startX[i], startY[i], x, y));
+		}
+		return Math.max(0f, 1f - dst / distance);
+	}
+
 	@Override
 	public boolean contains(float x, float y) {
 		// fast fail
 		if (!this.chainLightBounds.contains(x, y))
 			return false;
-		// actual check
-		FloatArray vertices = Pools.obtain(FloatArray.class);
-		vertices.clear();
-		
-		for (int i = 0; i < rayNum; i++) {
-			vertices.addAll(mx[i], my[i]);
-		}
-		for (int i = rayNum - 1; i > -1; i--) {
-			vertices.addAll(startX[i], startY[i]);
-		}
-		
+		// actual check, polygon goes along the ray ends and back along the
+		// ray starts
+		final int count = rayNum * 2;
 		int intersects = 0;
-		for (int i = 0; i < vertices.size; i += 2) {
-			float x1 = vertices.items[i];
-			float y1 = vertices.items[i + 1];
-			float x2 = vertices.items[(i + 2) % vertices.size];
-			float y2 = vertices.items[(i + 3) % vertices.size];
+		float x1 = startX[0];
+		float y1 = startY[0];
+		for (int i = 0; i < count; i++) {
+			final int ray = i < rayNum ? i : count - 1 - i;
+			final float x2 = i < rayNum ? mx[ray] : startX[ray];
+			final float y2 = i < rayNum ? my[ray] : startY[ray];
 			if (((y1 <= y && y < y2) || (y2 <= y && y < y1)) &&
 					x < ((x2 - x1) / (y2 - y1) * (y - y1) + x1))
 				intersects++;
+			x1 = x2;
+			y1 = y2;
 		}
-		boolean result = (intersects & 1) == 1;
-
-		Pools.free(vertices);
-		return result;
+		return (intersects & 1) == 1;
 	}
 	
 	/**
@@ -444,7 +488,8 @@ public class ChainLight extends Light {
 		}
 	}
 	
-	protected void updateMesh() {
+	@Override
+	protected void castRays() {
 		for (int i = 0; i < rayNum; i++) {
 			m_index = i;
 			f[i] = 1f;
@@ -455,13 +500,16 @@ public class ChainLight extends Light {
 			tmpStart.x = startX[i];
 			tmpStart.y = startY[i];
 			if (rayHandler.world != null && !xray) {
-				rayHandler.world.rayCast(ray, tmpStart, tmpEnd);
+				rayCast(tmpStart, tmpEnd);
 			}
 		}
-		setMesh();
 	}
 	
+	@Override
 	protected void setMesh() {
+		if (rayHandler.headless) return;
+
+		final float colorF = getMeshColorF();
 		int size = 0;
 		for (int i = 0; i < rayNum; i++) {
 			segments[size++] = startX[i];
@@ -493,6 +541,21 @@ public class ChainLight extends Light {
 		softShadowMesh.setVertices(segments, 0, size);
 	}
 	
+	@Override
+	void getRayBounds(Rectangle bounds) {
+		float minX = startX[0];
+		float minY = startY[0];
+		float maxX = minX;
+		float maxY = minY;
+		for (int i = 0; i < rayNum; i++) {
+			minX = Math.min(minX, Math.min(startX[i], endX[i]));
+			minY = Math.min(minY, Math.min(startY[i], endY[i]));
+			maxX = Math.max(maxX, Math.max(startX[i], endX[i]));
+			maxY = Math.max(maxY, Math.max(startY[i], endY[i]));
+		}
+		bounds.set(minX, minY, maxX - minX, maxY - minY);
+	}
+
 	/** Internal method for bounding rectangle recalculation **/
 	protected void updateBoundingRects() {
 		float maxX = startX[0];
@@ -100,7 +100,13 @@ public class ConeLight extends PositionalLight {
 		dirty = true;
 	}
 	
+	@Override
+	protected float getArcHalfAngle() {
+		return coneDegree;
+	}
+
 	/** Updates lights sector basing on distance, direction and coneDegree **/
+	@Override
 	protected void setEndPoints() {
 		for (int i = 0; i < rayNum; i++) {
 			float angle = direction + coneDegree - 2f * coneDegree * i
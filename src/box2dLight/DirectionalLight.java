@@ -9,6 +9,7 @@ import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.math.Intersector;
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.ChainShape;
@@ -74,22 +75,24 @@ public class DirectionalLight extends Light {
 			end[i] = new Vector2();
 		}
 
-		Mesh.VertexDataType vertexDataType = Mesh.VertexDataType.VertexArray;
-		if (Gdx.gl30 != null) {
-			vertexDataType = VertexDataType.VertexBufferObjectWithVAO;
+		if (!rayHandler.headless) {
+			Mesh.VertexDataType vertexDataType = Mesh.VertexDataType.VertexArray;
+			if (Gdx.gl30 != null) {
+				vertexDataType = VertexDataType.VertexBufferObjectWithVAO;
+			}
+
+			lightMesh = new Mesh(
+					vertexDataType, staticLight, vertexNum, 0,
+					new VertexAttribute(Usage.Position, 2, "vertex_positions"),
+					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
+					new VertexAttribute(Usage.Generic, 1, "s"));
+			softShadowMesh = new Mesh(
+					vertexDataType, staticLight, vertexNum, 0,
+					new VertexAttribute(Usage.Position, 2, "vertex_positions"),
+					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
+					new VertexAttribute(Usage.Generic, 1, "s"));
 		}
 		
-		lightMesh = new Mesh(
-				vertexDataType, staticLight, vertexNum, 0,
-				new VertexAttribute(Usage.Position, 2, "vertex_positions"),
-				new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
-				new VertexAttribute(Usage.Generic, 1, "s"));
-		softShadowMesh = new Mesh(
-				vertexDataType, staticLight, vertexNum, 0,
-				new VertexAttribute(Usage.Position, 2, "vertex_positions"),
-				new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
-				new VertexAttribute(Usage.Generic, 1, "s"));
-		
 		update();
 	}
 
@@ -146,22 +149,39 @@ public class DirectionalLight extends Light {
 		for (int i = 0; i < rayNum; i++) {
 			final float steppedX = i * portionX + x;
 			final float steppedY = i * portionY + y;
-			m_index = i;
 			start[i].x = steppedX - xAxelOffSet;
 			start[i].y = steppedY - yAxelOffSet;
 
-			mx[i] = end[i].x = steppedX + xAxelOffSet;
-			my[i] = end[i].y = steppedY + yAxelOffSet;
+			end[i].x = steppedX + xAxelOffSet;
+			end[i].y = steppedY + yAxelOffSet;
+		}
+
+		updateMesh();
+	}
+
+	@Override
+	protected void castRays() {
+		for (int i = 0; i < rayNum; i++) {
+			m_index = i;
+			f[i] = 1f;
+			mx[i] = end[i].x;
+			my[i] = end[i].y;
 
 			if (rayHandler.world != null && !xray && !rayHandler.pseudo3d) {
-				rayHandler.world.rayCast(ray, start[i], end[i]);
+				rayCast(start[i], end[i]);
 			}
 		}
+	}
+
+	@Override
+	protected void setMesh() {
+		if (rayHandler.headless) return;
 
 		// update light mesh
 		// ray starting point
 		int size = 0;
 		final int arraySize = rayNum;
+		final float colorF = getMeshColorF();
 
 		for (int i = 0; i < arraySize; i++) {
 			segments[size++] = start[i].x;
@@ -194,6 +214,21 @@ public class DirectionalLight extends Light {
 		softShadowMesh.setVertices(segments, 0, size);
 	}
 
+	@Override
+	void getRayBounds(Rectangle bounds) {
+		float minX = start[0].x;
+		float minY = start[0].y;
+		float maxX = minX;
+		float maxY = minY;
+		for (int i = 0; i < rayNum; i++) {
+			minX = Math.min(minX, Math.min(start[i].x, end[i].x));
+			minY = Math.min(minY, Math.min(start[i].y, end[i].y));
+			maxX = Math.max(maxX, Math.max(start[i].x, end[i].x));
+			maxY = Math.max(maxY, Math.max(start[i].y, end[i].y));
+		}
+		bounds.set(minX, minY, maxX - minX, maxY - minY);
+	}
+
 	@Override
 	void render () {
 		rayHandler.lightRenderedLastFrame++;
@@ -208,6 +243,16 @@ public class DirectionalLight extends Light {
 		}
 	}
 
+	@Override
+	void batch (LightBatch batch) {
+		rayHandler.lightRenderedLastFrame++;
+		batch.addStrip(lightMesh, vertexNum, colorF);
+
+		if (soft && !xray && !rayHandler.pseudo3d) {
+			batch.addStrip(softShadowMesh, vertexNum, colorF);
+		}
+	}
+
 	protected void prepareFixtureData() {
 		rayHandler.world.QueryAABB(
 				dynamicShadowCallback,
@@ -216,12 +261,12 @@ public class DirectionalLight extends Light {
 	}
 
 	protected void updateDynamicShadowMeshes() {
-		int meshInd = 0;
+		dynamicShadowVertices.clear();
 		float colBits = rayHandler.ambientLight.toFloatBits();
 		//We never clear the affectedFixtures array except the lightsource moves.
 		//This prevents shadows from disappearing when fixture is out of sight but shadow should be still there
 		for (Fixture fixture : affectedFixtures) {
-			LightData data = (LightData) fixture.getUserData();
+			LightData data = getLightData(fixture);
 			if (data == null) {
 				continue;
 			}
@@ -266,7 +311,7 @@ public class DirectionalLight extends Light {
 						cShape.getVertex(n, tmpVec);
 					}
 					tmpVec.set(body.getWorldPoint(tmpVec));
-					tmpVerts.add(tmpVec.cpy());
+					tmpVerts.add(tmpVec.x, tmpVec.y);
 
 					tmpEnd.set(tmpVec).sub(lstart).limit2(0.0001f).add(tmpVec);
 					if (fixture.testPoint(tmpEnd)) {
@@ -286,7 +331,7 @@ public class DirectionalLight extends Light {
 
 				ind.clear();
 				if (!hasGasp) {
-					tmpVec.set(tmpVerts.get(minDstN));
+					tmpVec.set(tmpVerts.get(minDstN * 2), tmpVerts.get(minDstN * 2 + 1));
 					for (int n = minDstN; n < vertexCount; n++) {
 						ind.add(n);
 					}
@@ -312,8 +357,9 @@ public class DirectionalLight extends Light {
 					}
 				}
 
-				for (int n : ind.toArray()) {
-					tmpVec.set(tmpVerts.get(n));
+				for (int i = 0; i < ind.size; i++) {
+					final int n = ind.get(i);
+					tmpVec.set(tmpVerts.get(n * 2), tmpVerts.get(n * 2 + 1));
 					tmpEnd.set(tmpVec).sub(lstart).setLength(l).add(tmpVec);
 
 					segments[shadowSize++] = tmpVec.x;
@@ -328,13 +374,13 @@ public class DirectionalLight extends Light {
 				}
 				if (data.shadow) {
 					for (int n = 0; n < vertexCount; n++) {
-						tmpVec.set(tmpVerts.get(n));
+						tmpVec.set(tmpVerts.get(n * 2), tmpVerts.get(n * 2 + 1));
 						segments[shadowSize++] = tmpVec.x;
 						segments[shadowSize++] = tmpVec.y;
 						segments[shadowSize++] = startColBits;
 						segments[shadowSize++] = f;
 						if (n == vertexCount - 1) {
-							tmpVec.set(tmpVerts.get(0));
+							tmpVec.set(tmpVerts.get(0), tmpVerts.get(1));
 							segments[shadowSize++] = tmpVec.x;
 							segments[shadowSize++] = tmpVec.y;
 							segments[shadowSize++] = startColBits;
@@ -400,22 +446,29 @@ public class DirectionalLight extends Light {
 				segments[shadowSize++] = f;
 			}
 
-			Mesh shadowMesh = null;
-			if (meshInd >= dynamicShadowMeshes.size) {
-				shadowMesh = new Mesh(
-						VertexDataType.VertexArray, false, 128, 0,
-						new VertexAttribute(Usage.Position, 2, "vertex_positions"),
-						new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
-						new VertexAttribute(Usage.Generic, 1, "s"));
-				dynamicShadowMeshes.add(shadowMesh);
-			} else {
-				shadowMesh = dynamicShadowMeshes.get(meshInd);
-			}
-			shadowMesh.setVertices(segments, 0, shadowSize);
-			meshInd++;
+			addStrip(dynamicShadowVertices, segments, shadowSize);
 
 		}
-		dynamicShadowMeshes.truncate(meshInd);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Polygon goes along the rays ends and back along the rays starts
+	 */
+	@Override
+	public int getPolygonVertexCount () {
+		return rayNum * 2;
+	}
+
+	@Override
+	float getPolygonX (int index) {
+		return index < rayNum ? mx[index] : start[rayNum * 2 - 1 - index].x;
+	}
+
+	@Override
+	float getPolygonY (int index) {
+		return index < rayNum ? my[index] : start[rayNum * 2 - 1 - index].y;
 	}
 
 	@Override
@@ -0,0 +1,115 @@
+package box2dLight;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Filter;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Cache of the fixture properties read by the lights callbacks, so they
+ * don't need to go through JNI for every reported fixture.
+ *
+ * <p>Entries are refreshed automatically when the fixture body, shape or
+ * user data object changes. Fixture objects are pooled and reused by the
+ * world after being destroyed, the reused ones get a new shape object, so
+ * they are not mistaken for the destroyed ones. Filter data and sensor
+ * flag changes must be reported with {@link #invalidate(Fixture)}.
+ *
+ * <p>Entries of the destroyed fixtures are evicted with {@link #prune()}.
+ */
+class FixtureCache {
+
+	/** Cached properties of a fixture **/
+	static class Entry {
+		short categoryBits;
+		short maskBits;
+		short groupIndex;
+		boolean sensor;
+		Body body;
+		Shape shape;
+		Object userData;
+		LightData lightData;
+	}
+
+	final ObjectMap<Fixture, Entry> entries = new ObjectMap<Fixture, Entry>();
+	final Array<Fixture> tmpFixtures = new Array<Fixture>();
+	final Pool<Entry> entryPool = new Pool<Entry>() {
+		@Override
+		protected Entry newObject() {
+			return new Entry();
+		}
+	};
+
+	/**
+	 * @return cached properties of the fixture, read on first use
+	 */
+	Entry get(Fixture fixture) {
+		Entry entry = entries.get(fixture);
+		if (entry == null) {
+			entry = entryPool.obtain();
+			entries.put(fixture, entry);
+			read(fixture, entry);
+		} else if (entry.body != fixture.getBody() ||
+				entry.shape != fixture.getShape() ||
+				entry.userData != fixture.getUserData()) {
+			read(fixture, entry);
+		}
+		return entry;
+	}
+
+	/** Forgets cached properties of the fixture **/
+	void invalidate(Fixture fixture) {
+		Entry entry = entries.remove(fixture);
+		if (entry != null) free(entry);
+	}
+
+	/**
+	 * Forgets cached properties of the fixtures which are no longer in the
+	 * fixture list of their body, so were destroyed
+	 */
+	void prune() {
+		for (Fixture fixture : entries.keys()) {
+			final Entry entry = entries.get(fixture);
+			if (!entry.body.getFixtureList().contains(fixture, true)) {
+				tmpFixtures.add(fixture);
+			}
+		}
+		for (Fixture fixture : tmpFixtures) {
+			invalidate(fixture);
+		}
+		tmpFixtures.clear();
+	}
+
+	/** Forgets cached properties of all fixtures **/
+	void clear() {
+		for (Entry entry : entries.values()) {
+			free(entry);
+		}
+		entries.clear();
+	}
+
+	private void free(Entry entry) {
+		entry.body = null;
+		entry.shape = null;
+		entry.userData = null;
+		entry.lightData = null;
+		entryPool.free(entry);
+	}
+
+	private void read(Fixture fixture, Entry entry) {
+		final Filter filter = fixture.getFilterData();
+		final Object userData = fixture.getUserData();
+		entry.categoryBits = filter.categoryBits;
+		entry.maskBits = filter.maskBits;
+		entry.groupIndex = filter.groupIndex;
+		entry.sensor = fixture.isSensor();
+		entry.body = fixture.getBody();
+		entry.shape = fixture.getShape();
+		entry.userData = userData;
+		entry.lightData = userData instanceof LightData ?
+				(LightData) userData : null;
+	}
+}
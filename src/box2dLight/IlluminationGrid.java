@@ -0,0 +1,231 @@
+package box2dLight;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Coarse grid of the light accumulated by the lights over the visible area,
+ * so gameplay code can sample light levels without visiting the lights.
+ *
+ * <p>Each cell holds the light map color at its center: the light shader
+ * output {@code s * quad_colors}, with its interpolated s approximated by
+ * the linear falloff of {@link Light#getIntensity(float, float)}, summed
+ * with the light map blending ({@code GL_SRC_ALPHA, GL_ONE}) for both
+ * color and alpha. Only the cells overlapping the old and new bounds of
+ * the lights recast, moved or recolored since last update are
+ * recomputed.
+ */
+class IlluminationGrid {
+
+	/** Cell size in floats: red, green, blue and alpha **/
+	static final int CELL_SIZE = 4;
+
+	final RayHandler rayHandler;
+	final float cellSize;
+
+	/** Cells range covered by the grid **/
+	int minX, minY, width = 0, height = 0;
+	float[] cells = new float[0];
+
+	final IntArray dirtyCells = new IntArray();
+	boolean[] dirty = new boolean[0];
+
+	final Rectangle tmpBounds = new Rectangle();
+	final Array<Light> tmpLights = new Array<Light>(false, 16);
+	final Color tmpColor = new Color();
+
+	IlluminationGrid(RayHandler rayHandler, float cellSize) {
+		this.rayHandler = rayHandler;
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Moves the grid over the visible area and recomputes the cells which
+	 * lights changed since last update
+	 */
+	void update() {
+		final int newMinX = cell(rayHandler.x1);
+		final int newMinY = cell(rayHandler.y1);
+		final int newWidth = cell(rayHandler.x2) - newMinX + 1;
+		final int newHeight = cell(rayHandler.y2) - newMinY + 1;
+		final boolean moved = newMinX != minX || newMinY != minY ||
+				newWidth != width || newHeight != height;
+		if (moved) {
+			minX = newMinX;
+			minY = newMinY;
+			width = newWidth;
+			height = newHeight;
+			final int count = width * height;
+			if (dirty.length < count) {
+				cells = new float[count * CELL_SIZE];
+				dirty = new boolean[count];
+			}
+			dirtyCells.clear();
+			for (int i = 0; i < count; i++) {
+				dirty[i] = true;
+				dirtyCells.add(i);
+			}
+		}
+
+		for (Light light : rayHandler.lightList) {
+			light.getRayBounds(tmpBounds);
+			final int lightMinX = cell(tmpBounds.x);
+			final int lightMinY = cell(tmpBounds.y);
+			final int lightMaxX = cell(tmpBounds.x + tmpBounds.width);
+			final int lightMaxY = cell(tmpBounds.y + tmpBounds.height);
+			if (light.inIllumination &&
+					light.refreshFrame != rayHandler.updateFrame &&
+					light.illuminationColorF == light.colorF &&
+					light.illuminationMinX == lightMinX &&
+					light.illuminationMinY == lightMinY &&
+					light.illuminationMaxX == lightMaxX &&
+					light.illuminationMaxY == lightMaxY) {
+				continue;
+			}
+
+			remove(light);
+			light.inIllumination = true;
+			light.illuminationColorF = light.colorF;
+			light.illuminationMinX = lightMinX;
+			light.illuminationMinY = lightMinY;
+			light.illuminationMaxX = lightMaxX;
+			light.illuminationMaxY = lightMaxY;
+			markDirty(lightMinX, lightMinY, lightMaxX, lightMaxY);
+		}
+
+		for (int i = 0; i < dirtyCells.size; i++) {
+			final int index = dirtyCells.items[i];
+			dirty[index] = false;
+			sample(cellCenter(minX + index % width),
+					cellCenter(minY + index / width), tmpColor);
+			final int offset = index * CELL_SIZE;
+			cells[offset] = tmpColor.r;
+			cells[offset + 1] = tmpColor.g;
+			cells[offset + 2] = tmpColor.b;
+			cells[offset + 3] = tmpColor.a;
+		}
+		dirtyCells.clear();
+	}
+
+	/**
+	 * Marks the cells lit by the light, as of last update, dirty and stops
+	 * tracking it
+	 */
+	void remove(Light light) {
+		if (!light.inIllumination) return;
+
+		light.inIllumination = false;
+		markDirty(light.illuminationMinX, light.illuminationMinY,
+				light.illuminationMaxX, light.illuminationMaxY);
+	}
+
+	/** Stops tracking all the lights **/
+	void clear() {
+		for (Light light : rayHandler.lightList) {
+			light.inIllumination = false;
+		}
+		for (Light light : rayHandler.disabledLights) {
+			light.inIllumination = false;
+		}
+		width = 0;
+		height = 0;
+		dirtyCells.clear();
+	}
+
+	void markDirty(int x1, int y1, int x2, int y2) {
+		final int fromX = Math.max(x1, minX) - minX;
+		final int fromY = Math.max(y1, minY) - minY;
+		final int toX = Math.min(x2, minX + width - 1) - minX;
+		final int toY = Math.min(y2, minY + height - 1) - minY;
+		for (int y = fromY; y <= toY; y++) {
+			for (int x = fromX; x <= toX; x++) {
+				final int index = y * width + x;
+				if (dirty[index]) continue;
+
+				dirty[index] = true;
+				dirtyCells.add(index);
+			}
+		}
+	}
+
+	/**
+	 * Sets the color to the light accumulated at given point, read from its
+	 * cell if the point is covered by the grid, computed otherwise
+	 *
+	 * @return the color for chaining
+	 */
+	Color getIllumination(float x, float y, Color color) {
+		final int cellX = cell(x) - minX;
+		final int cellY = cell(y) - minY;
+		if (cellX < 0 || cellY < 0 || cellX >= width || cellY >= height) {
+			return sample(x, y, color);
+		}
+
+		final int offset = (cellY * width + cellX) * CELL_SIZE;
+		return color.set(cells[offset], cells[offset + 1], cells[offset + 2],
+				cells[offset + 3]);
+	}
+
+	/**
+	 * Sets the color to the light accumulated at given point by the lights
+	 * near it
+	 *
+	 * @return the color for chaining
+	 */
+	Color sample(float x, float y, Color color) {
+		final LightGrid lightGrid = rayHandler.lightGrid;
+		if (lightGrid != null) {
+			tmpLights.clear();
+			if (lightGrid.query(x, y, x, y, rayHandler.lightList.size,
+					tmpLights)) {
+				return sample(tmpLights, x, y, color);
+			}
+		}
+		return sample(rayHandler.lightList, x, y, color);
+	}
+
+	/**
+	 * Sets the color to the light map color the lights render at given
+	 * point
+	 *
+	 * @return the color for chaining
+	 */
+	static Color sample(Array<Light> lights, float x, float y, Color color) {
+		final boolean gamma = RayHandler.getGammaCorrection();
+		color.set(0f, 0f, 0f, 0f);
+		for (Light light : lights) {
+			final float intensity = light.getIntensity(x, y);
+			if (intensity <= 0f) continue;
+
+			// shader output s * quad_colors, gamma corrected if enabled
+			final Color lightColor = light.color;
+			float r = lightColor.r * intensity;
+			float g = lightColor.g * intensity;
+			float b = lightColor.b * intensity;
+			float a = lightColor.a * intensity;
+			if (gamma) {
+				r = (float) Math.sqrt(r);
+				g = (float) Math.sqrt(g);
+				b = (float) Math.sqrt(b);
+				a = (float) Math.sqrt(a);
+			}
+			// blended with GL_SRC_ALPHA, GL_ONE for all channels
+			color.r += r * a;
+			color.g += g * a;
+			color.b += b * a;
+			color.a += a * a;
+		}
+		// light map saturates the same way
+		return color.clamp();
+	}
+
+	int cell(float coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+
+	float cellCenter(int cell) {
+		return (cell + 0.5f) * cellSize;
+	}
+}
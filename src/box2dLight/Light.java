@@ -1,8 +1,10 @@
 package box2dLight;
 
+import java.nio.FloatBuffer;
+
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.Body;
 import com.badlogic.gdx.physics.box2d.Filter;
@@ -11,6 +13,7 @@ import com.badlogic.gdx.physics.box2d.QueryCallback;
 import com.badlogic.gdx.physics.box2d.RayCastCallback;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FloatArray;
 import com.badlogic.gdx.utils.IntArray;
 
 /**
@@ -38,6 +41,7 @@ public abstract class Light implements Disposable {
 	protected boolean soft = true;
 	protected boolean xray = false;
 	protected boolean staticLight = false;
+	protected boolean semiStatic = false;
 	protected boolean culled = false;
 	protected boolean dirty = true;
 	protected boolean ignoreBody = false;
@@ -58,6 +62,33 @@ public abstract class Light implements Disposable {
 	protected float[] my;
 	protected float[] f;
 	protected int m_index = 0;
+	protected boolean worldRayCasting = true;
+
+	/** Ray budget variables, refresh frame is the last update with new rays **/
+	int refreshFrame = -1;
+	float priority = 0f;
+	boolean deferred = false;
+
+	/** Incremental ray casting variables **/
+	int castFrame = -1;
+	Filter castFilter = null;
+	Filter castGlobalFilter = null;
+	boolean castIgnoreBody = false;
+
+	/** Light grid variables **/
+	boolean inGrid = false;
+	int gridMinX, gridMinY, gridMaxX, gridMaxY;
+	int gridStamp = 0;
+
+	/** Illumination grid variables **/
+	boolean inIllumination = false;
+	int illuminationMinX, illuminationMinY, illuminationMaxX, illuminationMaxY;
+	float illuminationColorF;
+
+	/** Light tracking variables **/
+	boolean inTracking = false;
+	int trackMinX, trackMinY, trackMaxX, trackMaxY;
+	long trackPolygonHash;
 
 	/**
 	 * Dynamic shadows variables *
@@ -66,10 +97,15 @@ public abstract class Light implements Disposable {
 
 	protected float pseudo3dHeight = 0f;
 
-	protected final Array<Mesh> dynamicShadowMeshes = new Array<Mesh>();
+	/**
+	 * Shadow strips of the affected fixtures joined into a single triangle
+	 * strip, 4 floats per vertex: x, y, color, s
+	 */
+	protected final FloatArray dynamicShadowVertices = new FloatArray();
 	//Should never be cleared except when the light changes position (not direction). Prevents shadows from disappearing when fixture is out of sight.
 	protected final Array<Fixture> affectedFixtures = new Array<Fixture>();
-	protected final Array<Vector2> tmpVerts = new Array<Vector2>();
+	/** World vertices of the fixture, 2 floats each: x, y **/
+	protected final FloatArray tmpVerts = new FloatArray();
 
 	protected final IntArray ind = new IntArray();
 
@@ -116,12 +152,146 @@ public abstract class Light implements Disposable {
 	abstract void render();
 
 	/**
-	 * Render this light shadow
+	 * Adds this light meshes to the batch, renders them on its own by
+	 * default
 	 */
-	protected void dynamicShadowRender() {
-		for (Mesh m : dynamicShadowMeshes) {
-			m.render(rayHandler.lightShader, GL20.GL_TRIANGLE_STRIP);
+	void batch(LightBatch batch) {
+		batch.flush();
+		batch.shader.setUniformf("u_lightColor", color);
+		render();
+		batch.shader.setUniformf("u_lightColor", Color.WHITE);
+	}
+
+	/**
+	 * Casts this light rays and stores the results in {@link #mx},
+	 * {@link #my} and {@link #f}
+	 * 
+	 * <p>In parallel update mode this is called from worker threads, so it
+	 * must not touch any GL or box2d state, use {@link #rayCast(Vector2, Vector2)}
+	 * for the actual ray casting
+	 */
+	protected abstract void castRays();
+
+	/**
+	 * Uploads the results of last {@link #castRays()} call to this light
+	 * meshes
+	 */
+	protected abstract void setMesh();
+
+	/**
+	 * Updates ray casting results and meshes of this light, or queues them
+	 * for the parallel update if it's enabled
+	 */
+	protected void updateMesh() {
+		if (deferred) {
+			// static lights are updated only while dirty, keep it for later
+			dirty = true;
+			return;
+		}
+
+		if (staticLight) rayHandler.staticLayerDirty = true;
+		if (rayHandler.skipSettledLights && isSettled()) {
+			castFrame = rayHandler.updateFrame;
+			return;
+		}
+		// stamped only when the rays are recast, so settled lights are not
+		// reported as changed
+		refreshFrame = rayHandler.updateFrame;
+
+		prepareRays();
+		if (rayHandler.queueRayCasting(this)) return;
+
+		worldRayCasting = rayHandler.world != null &&
+				rayHandler.needsWorldRayCasting(this);
+		castRays();
+		setMesh();
+	}
+
+	/**
+	 * Called before ray casting on the rendering thread, lights that change
+	 * their rays layout on every update should do it here
+	 */
+	protected void prepareRays() {
+	}
+
+	/**
+	 * Casts a single ray for the {@link #m_index} ray of this light
+	 * 
+	 * <p>Uses the occluders snapshot while the rayHandler runs parallel
+	 * update, the physics world otherwise. Static occluders tree is used in
+	 * both cases if it's enabled.
+	 * 
+	 * <p>NOTE: {@link #f} of the ray must be set to 1 before the call
+	 */
+	protected void rayCast(Vector2 start, Vector2 end) {
+		final OccluderTree staticOccluders = rayHandler.staticOccluders;
+		if (staticOccluders != null) {
+			staticOccluders.rayCast(this, start.x, start.y, end.x, end.y);
+		}
+
+		if (rayHandler.updatingInParallel) {
+			rayHandler.occluders.rayCast(this, start.x, start.y, end.x, end.y);
+		} else if (worldRayCasting) {
+			rayHandler.world.rayCast(ray, start, end);
+		}
+	}
+
+	/**
+	 * Remembers the state this light rays were cast with, so the next update
+	 * may recast only the rays crossing changed bodies
+	 */
+	void storeCastState() {
+		castFrame = rayHandler.updateFrame;
+		castFilter = filterA;
+		castGlobalFilter = globalFilterA;
+		castIgnoreBody = ignoreBody;
+	}
+
+	/**
+	 * @return if all rays of this light were cast on the previous update
+	 * with the same filters, so their results are still valid unless bodies
+	 * in their reach changed since then
+	 */
+	boolean hasSameCastState() {
+		return castFrame == rayHandler.updateFrame - 1 &&
+				castFilter == filterA && castGlobalFilter == globalFilterA &&
+				castIgnoreBody == ignoreBody;
+	}
+
+	/**
+	 * @return if nothing affecting this light rays and mesh changed since
+	 * its previous update, so both can be kept as they are
+	 */
+	protected boolean isSettled() {
+		return false;
+	}
+
+	/**
+	 * Stores axis aligned bounds of the area reachable by this light rays
+	 * to given rectangle
+	 */
+	abstract void getRayBounds(Rectangle bounds);
+
+	/**
+	 * Appends triangle strip to the vertices, joining it to the previous
+	 * strip with degenerate triangles
+	 */
+	static void addStrip(FloatArray vertices, float[] strip, int size) {
+		if (size == 0) return;
+
+		if (vertices.size > 0) {
+			vertices.addAll(vertices.items, vertices.size - 4, 4);
+			vertices.addAll(strip, 0, 4);
 		}
+		vertices.addAll(strip, 0, size);
+	}
+
+	/**
+	 * Adds this light shadow to the rayHandler shadows batch
+	 */
+	protected void dynamicShadowRender() {
+		addStrip(rayHandler.shadowVertices, dynamicShadowVertices.items,
+				dynamicShadowVertices.size);
 	}
 
 	/**
@@ -202,7 +372,7 @@ public abstract class Light implements Disposable {
 			color.set(DefaultColor);
 		}
 		colorF = color.toFloatBits();
-		if (staticLight) dirty = true;
+		if (staticLight) staticColorChanged();
 	}
 
 	/**
@@ -224,14 +394,36 @@ public abstract class Light implements Disposable {
 	public void setColor(float r, float g, float b, float a) {
 		color.set(r, g, b, a);
 		colorF = color.toFloatBits();
-		if (staticLight) dirty = true;
+		if (staticLight) staticColorChanged();
 	}
 	
+	/**
+	 * Marks this static light to be redrawn, its meshes need to be rebuilt
+	 * only if the color is written to their vertices, or if it's not added
+	 * to any rayHandler yet
+	 */
+	void staticColorChanged() {
+		if (rayHandler == null || rayHandler.customLightShader != null) {
+			dirty = true;
+		} else {
+			rayHandler.staticLayerDirty = true;
+		}
+	}
+
+	/**
+	 * @return packed color written to this light mesh vertices, white if
+	 * the color is passed to the default light shader as uniform
+	 */
+	float getMeshColorF() {
+		return rayHandler.customLightShader != null ? colorF : oneColorBits;
+	}
+
 	/**
 	 * Adds light to specified RayHandler
 	 */
 	public void add(RayHandler rayHandler) {
 		this.rayHandler = rayHandler;
+		if (staticLight) rayHandler.staticLayerDirty = true;
 		if (active) {
 			rayHandler.lightList.add(this);
 		} else {
@@ -250,6 +442,12 @@ public abstract class Light implements Disposable {
 	 * Removes light from specified RayHandler and disposes it if requested
 	 */
 	public void remove(boolean doDispose) {
+		if (staticLight) rayHandler.staticLayerDirty = true;
+		if (rayHandler.lightGrid != null) rayHandler.lightGrid.remove(this);
+		if (rayHandler.illuminationGrid != null) {
+			rayHandler.illuminationGrid.remove(this);
+		}
+		if (rayHandler.lightTracker != null) rayHandler.lightTracker.remove(this);
 		if (active) {
 			rayHandler.lightList.removeValue(this, false);
 		} else {
@@ -264,12 +462,10 @@ public abstract class Light implements Disposable {
 	 */
 	public void dispose() {
 		affectedFixtures.clear();
-		lightMesh.dispose();
-		softShadowMesh.dispose();
-		for (Mesh mesh : dynamicShadowMeshes) {
-			mesh.dispose();
-		}
-		dynamicShadowMeshes.clear();
+		// no meshes in headless mode
+		if (lightMesh != null) lightMesh.dispose();
+		if (softShadowMesh != null) softShadowMesh.dispose();
+		dynamicShadowVertices.clear();
 	}
 
 	/**
@@ -289,6 +485,10 @@ public abstract class Light implements Disposable {
 		this.active = active;
 		if (rayHandler == null)
 			return;
+
+		if (staticLight) rayHandler.staticLayerDirty = true;
+		// bodies may have changed while disabled
+		if (semiStatic && active) dirty = true;
 		
 		if (active) {
 			rayHandler.lightList.add(this);
@@ -296,6 +496,13 @@ public abstract class Light implements Disposable {
 		} else {
 			rayHandler.disabledLights.add(this);
 			rayHandler.lightList.removeValue(this, true);
+			if (rayHandler.lightGrid != null) rayHandler.lightGrid.remove(this);
+			if (rayHandler.illuminationGrid != null) {
+				rayHandler.illuminationGrid.remove(this);
+			}
+			if (rayHandler.lightTracker != null) {
+				rayHandler.lightTracker.remove(this);
+			}
 		}
 	}
 
@@ -341,7 +548,38 @@ public abstract class Light implements Disposable {
 	 */
 	public void setStaticLight(boolean staticLight) {
 		this.staticLight = staticLight;
+		this.semiStatic = false;
 		if (staticLight) dirty = true;
+		if (rayHandler != null) rayHandler.staticLayerDirty = true;
+	}
+
+	/**
+	 * @return if this light is semi-static
+	 */
+	public boolean isSemiStatic() {
+		return semiStatic;
+	}
+
+	/**
+	 * Enables/disables this light semi-static behavior
+	 * 
+	 * <p>Semi-static light is a static light which is also updated
+	 * automatically when a body overlapping its bounds is created,
+	 * destroyed, moved or woken up. Useful for lights near doors, crates or
+	 * destructible walls, which would otherwise need to be dynamic.
+	 * 
+	 * <p>Bodies are compared between the rayHandler updates, static
+	 * lights attached to bodies don't follow them
+	 * 
+	 * @see #setStaticLight(boolean)
+	 */
+	public void setSemiStatic(boolean semiStatic) {
+		setStaticLight(semiStatic);
+		this.semiStatic = semiStatic;
+		if (semiStatic && rayHandler != null) {
+			rayHandler.semiStaticLights = true;
+			rayHandler.updateBodyJournal();
+		}
 	}
 
 	/**
@@ -407,6 +645,100 @@ public abstract class Light implements Disposable {
 	public boolean contains(float x, float y) {
 		return false;
 	}
+
+	/**
+	 * @return intensity of this light at given point, from 1 at the light
+	 * source falling off to 0 at its distance like in the light shader, 0
+	 * if the point is not inside of this light area
+	 * 
+	 * @param x - horizontal position of point in world coordinates
+	 * @param y - vertical position of point in world coordinates
+	 */
+	public float getIntensity(float x, float y) {
+		return contains(x, y) ? 1f : 0f;
+	}
+
+	/**
+	 * @return number of vertices of this light polygon
+	 * 
+	 * @see #getPolygon(float[])
+	 */
+	public int getPolygonVertexCount() {
+		return 0;
+	}
+
+	/**
+	 * Writes vertices of this light polygon, as of its last update, to
+	 * given array as x, y pairs in world coordinates
+	 * 
+	 * <p>Array must hold at least {@link #getPolygonVertexCount()} * 2
+	 * floats
+	 * 
+	 * @return number of written vertices
+	 */
+	public int getPolygon(float[] vertices) {
+		final int count = getPolygonVertexCount();
+		for (int i = 0; i < count; i++) {
+			vertices[i * 2] = getPolygonX(i);
+			vertices[i * 2 + 1] = getPolygonY(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Puts vertices of this light polygon, as of its last update, to given
+	 * buffer at its position as x, y pairs in world coordinates
+	 * 
+	 * @return number of put vertices
+	 * 
+	 * @see #getPolygon(float[])
+	 */
+	public int getPolygon(FloatBuffer vertices) {
+		final int count = getPolygonVertexCount();
+		for (int i = 0; i < count; i++) {
+			vertices.put(getPolygonX(i));
+			vertices.put(getPolygonY(i));
+		}
+		return count;
+	}
+
+	/**
+	 * @return hash of this light polygon as of its last update, to tell if
+	 * recast rays changed its shape
+	 */
+	long getPolygonHash() {
+		final int count = getPolygonVertexCount();
+		long hash = count;
+		for (int i = 0; i < count; i++) {
+			hash = hash * 1099511628211L + Float.floatToIntBits(getPolygonX(i));
+			hash = hash * 1099511628211L + Float.floatToIntBits(getPolygonY(i));
+		}
+		return hash;
+	}
+
+	/** @return horizontal position of the polygon vertex **/
+	float getPolygonX(int index) {
+		return 0f;
+	}
+
+	/** @return vertical position of the polygon vertex **/
+	float getPolygonY(int index) {
+		return 0f;
+	}
+
+	/**
+	 * Checks which of given points are inside of this light area
+	 * 
+	 * @param xs - horizontal positions of points in world coordinates
+	 * @param ys - vertical positions of points in world coordinates
+	 * @param out - set to {@code true} for points inside, {@code false}
+	 *              for others
+	 */
+	public void contains(float[] xs, float[] ys, boolean[] out) {
+		for (int i = 0; i < xs.length; i++) {
+			out[i] = contains(xs[i], ys[i]);
+		}
+	}
 	
 	/**
 	 * Sets if the attached body fixtures should be ignored during raycasting
@@ -464,14 +796,16 @@ public abstract class Light implements Disposable {
 		final public float reportRayFixture(Fixture fixture, Vector2 point,
 				Vector2 normal, float fraction) {
 			
-			if ((globalFilterA != null) && !globalContactFilter(fixture))
-				return -1;
-			
-			if ((filterA != null) && !contactFilter(fixture))
+			if (!acceptsFixture(fixture))
 				return -1;
-			
-			if (ignoreBody && fixture.getBody() == getBody())
+
+			final OccluderTree staticOccluders = rayHandler.staticOccluders;
+			if (staticOccluders != null && staticOccluders.contains(fixture))
 				return -1;
+
+			// static occluders hit may be closer
+			if (fraction >= f[m_index])
+				return f[m_index];
 			
 			// if (fixture.isSensor())
 			// return -1;
@@ -484,13 +818,95 @@ public abstract class Light implements Disposable {
 	
 	boolean contactFilter(Fixture fixtureB) {
 		Filter filterB = fixtureB.getFilterData();
+		return shouldCollide(filterA, filterB.categoryBits,
+				filterB.maskBits, filterB.groupIndex);
+	}
 
+	static boolean shouldCollide(Filter filterA, short categoryBits,
+			short maskBits, short groupIndex) {
 		if (filterA.groupIndex != 0 &&
-			filterA.groupIndex == filterB.groupIndex)
+			filterA.groupIndex == groupIndex)
 			return filterA.groupIndex > 0;
 
-		return  (filterA.maskBits & filterB.categoryBits) != 0 &&
-				(filterA.categoryBits & filterB.maskBits) != 0;
+		return  (filterA.maskBits & categoryBits) != 0 &&
+				(filterA.categoryBits & maskBits) != 0;
+	}
+
+	/**
+	 * @return hash of the filters used by this light ray casting
+	 */
+	int getFilterHash() {
+		int hash = ignoreBody ? 1 : 0;
+		hash = hash * 31 + getFilterHash(filterA);
+		return hash * 31 + getFilterHash(globalFilterA);
+	}
+
+	static int getFilterHash(Filter filter) {
+		if (filter == null) return 0;
+
+		int hash = filter.categoryBits;
+		hash = hash * 31 + filter.maskBits;
+		return hash * 31 + filter.groupIndex;
+	}
+
+	/**
+	 * Checks if the fixture should cast shadows for this light, reading its
+	 * properties from the rayHandler fixture cache if it's enabled
+	 */
+	boolean acceptsFixture(Fixture fixture) {
+		final FixtureCache cache = rayHandler.fixtureCache;
+		if (cache != null) {
+			final FixtureCache.Entry entry = cache.get(fixture);
+			return acceptsOccluder(entry.body, entry.categoryBits,
+					entry.maskBits, entry.groupIndex);
+		}
+
+		if ((globalFilterA != null) && !globalContactFilter(fixture))
+			return false;
+
+		if ((filterA != null) && !contactFilter(fixture))
+			return false;
+
+		return !(ignoreBody && fixture.getBody() == getBody());
+	}
+
+	/**
+	 * @return light data of the fixture, from the fixture cache if it's
+	 * enabled
+	 */
+	LightData getLightData(Fixture fixture) {
+		final FixtureCache cache = rayHandler.fixtureCache;
+		if (cache != null) return cache.get(fixture).lightData;
+
+		return (LightData) fixture.getUserData();
+	}
+
+	/**
+	 * @return if the fixture is a sensor, from the fixture cache if it's
+	 * enabled
+	 */
+	boolean isSensor(Fixture fixture) {
+		final FixtureCache cache = rayHandler.fixtureCache;
+		if (cache != null) return cache.get(fixture).sensor;
+
+		return fixture.isSensor();
+	}
+
+	/**
+	 * Checks if the fixture with given body and filter data should cast
+	 * shadows for this light, same as the ray casting callback does
+	 */
+	boolean acceptsOccluder(Body body, short categoryBits, short maskBits,
+			short groupIndex) {
+		if ((globalFilterA != null) && !shouldCollide(globalFilterA,
+				categoryBits, maskBits, groupIndex))
+			return false;
+
+		if ((filterA != null) && !shouldCollide(filterA,
+				categoryBits, maskBits, groupIndex))
+			return false;
+
+		return !(ignoreBody && body == getBody());
 	}
 
 	/**
@@ -517,13 +933,8 @@ public abstract class Light implements Disposable {
 
 	boolean globalContactFilter(Fixture fixtureB) {
 		Filter filterB = fixtureB.getFilterData();
-
-		if (globalFilterA.groupIndex != 0 &&
-			globalFilterA.groupIndex == filterB.groupIndex)
-			return globalFilterA.groupIndex > 0;
-
-		return  (globalFilterA.maskBits & filterB.categoryBits) != 0 &&
-				(globalFilterA.categoryBits & filterB.maskBits) != 0;
+		return shouldCollide(globalFilterA, filterB.categoryBits,
+				filterB.maskBits, filterB.groupIndex);
 	}
 
 	/**
@@ -550,15 +961,7 @@ public abstract class Light implements Disposable {
 
 	protected boolean onDynamicCallback(Fixture fixture) {
 
-		if ((globalFilterA != null) && !globalContactFilter(fixture)) {
-			return false;
-		}
-
-		if ((filterA != null) && !contactFilter(fixture)) {
-			return false;
-		}
-
-		if (ignoreBody && fixture.getBody() == getBody()) {
+		if (!acceptsFixture(fixture)) {
 			return false;
 		}
 		//We only add the affectedFixtures once
@@ -573,7 +976,11 @@ public abstract class Light implements Disposable {
 				return true;
 			}
 			affectedFixtures.add(fixture);
-			if (fixture.getUserData() instanceof LightData) {
+			final FixtureCache cache = rayHandler.fixtureCache;
+			if (cache != null) {
+				LightData data = cache.get(fixture).lightData;
+				if (data != null) data.shadowsDropped++;
+			} else if (fixture.getUserData() instanceof LightData) {
 				LightData data = (LightData) fixture.getUserData();
 				data.shadowsDropped++;
 			}
@@ -0,0 +1,164 @@
+package box2dLight;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Mesh.VertexDataType;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.ShortArray;
+
+/**
+ * Streaming batch of the light meshes, collects fans and strips of all
+ * rendered lights as indexed triangles and draws them with a single call.
+ *
+ * <p>Vertices are copied from the CPU side buffers of the lights meshes, so
+ * their own vertex buffers are not bound nor uploaded while batching.
+ */
+class LightBatch implements Disposable {
+
+	/** Vertex size in floats: position, packed color and s **/
+	static final int VERTEX_SIZE = 4;
+
+	/** Indices are unsigned shorts, so a draw call can't address more **/
+	static final int MAX_VERTICES = 65535;
+
+	final FloatArray vertices = new FloatArray();
+	final ShortArray indices = new ShortArray();
+	Mesh mesh;
+	ShaderProgram shader;
+
+	/** Transform of the added vertices **/
+	boolean transformed = false;
+	float x, y, cos = 1f, sin = 0f;
+
+	/** Starts collecting meshes to be drawn with given light shader **/
+	void begin(ShaderProgram shader) {
+		this.shader = shader;
+		shader.setUniformf("u_lightColor", Color.WHITE);
+		vertices.clear();
+		indices.clear();
+	}
+
+	/** Draws collected meshes **/
+	void end() {
+		flush();
+		shader = null;
+	}
+
+	/**
+	 * Sets translation and rotation in degrees of the vertices added next
+	 */
+	void setTransform(float x, float y, float degrees) {
+		transformed = x != 0f || y != 0f || degrees != 0f;
+		this.x = x;
+		this.y = y;
+		cos = MathUtils.cosDeg(degrees);
+		sin = MathUtils.sinDeg(degrees);
+	}
+
+	/**
+	 * Adds triangle fan of the first count vertices of the source mesh,
+	 * colored with given packed light color
+	 */
+	void addFan(Mesh source, int count, float colorF) {
+		if (count < 3) return;
+		final int base = addVertices(source, count, colorF);
+		final short[] items = indices.ensureCapacity((count - 2) * 3);
+		int index = indices.size;
+		for (int i = 1; i < count - 1; i++) {
+			items[index++] = (short) base;
+			items[index++] = (short) (base + i);
+			items[index++] = (short) (base + i + 1);
+		}
+		indices.size = index;
+	}
+
+	/**
+	 * Adds triangle strip of the first count vertices of the source mesh,
+	 * colored with given packed light color
+	 */
+	void addStrip(Mesh source, int count, float colorF) {
+		if (count < 3) return;
+		final int base = addVertices(source, count, colorF);
+		final short[] items = indices.ensureCapacity((count - 2) * 3);
+		int index = indices.size;
+		for (int i = 0; i < count - 2; i++) {
+			items[index++] = (short) (base + i);
+			items[index++] = (short) (base + i + 1);
+			items[index++] = (short) (base + i + 2);
+		}
+		indices.size = index;
+	}
+
+	/**
+	 * Copies vertices of the source mesh, flushing the batch first if they
+	 * don't fit into it
+	 *
+	 * <p>Light meshes are white where lit and zero elsewhere, as their color
+	 * is passed as uniform, so lit vertices get the light color here.
+	 *
+	 * @return index of the first copied vertex
+	 */
+	int addVertices(Mesh source, int count, float colorF) {
+		if (vertices.size / VERTEX_SIZE + count > MAX_VERTICES) flush();
+
+		final int base = vertices.size / VERTEX_SIZE;
+		final int size = count * VERTEX_SIZE;
+		final float[] items = vertices.ensureCapacity(size);
+		source.getVertices(0, size, items, vertices.size);
+		for (int i = vertices.size; i < vertices.size + size; i += VERTEX_SIZE) {
+			if (transformed) {
+				final float vx = items[i];
+				final float vy = items[i + 1];
+				items[i] = x + vx * cos - vy * sin;
+				items[i + 1] = y + vx * sin + vy * cos;
+			}
+			if (items[i + 2] != Light.zeroColorBits) items[i + 2] = colorF;
+		}
+		vertices.size += size;
+		return base;
+	}
+
+	/** Draws and clears collected meshes **/
+	void flush() {
+		if (indices.size == 0) {
+			vertices.clear();
+			return;
+		}
+
+		final int vertexCount = vertices.size / VERTEX_SIZE;
+		if (mesh == null || mesh.getMaxVertices() < vertexCount ||
+				mesh.getMaxIndices() < indices.size) {
+			int maxVertices = mesh == null ?
+					RayHandler.MAX_SHADOW_VERTICES : mesh.getMaxVertices();
+			int maxIndices = mesh == null ?
+					RayHandler.MAX_SHADOW_VERTICES * 3 : mesh.getMaxIndices();
+			while (maxVertices < vertexCount) maxVertices *= 2;
+			while (maxIndices < indices.size) maxIndices *= 2;
+			if (mesh != null) mesh.dispose();
+			mesh = new Mesh(
+					VertexDataType.VertexBufferObject, false,
+					Math.min(maxVertices, MAX_VERTICES), maxIndices,
+					new VertexAttribute(Usage.Position, 2, "vertex_positions"),
+					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
+					new VertexAttribute(Usage.Generic, 1, "s"));
+		}
+		mesh.setVertices(vertices.items, 0, vertices.size);
+		mesh.setIndices(indices.items, 0, indices.size);
+		mesh.render(shader, GL20.GL_TRIANGLES, 0, indices.size);
+
+		vertices.clear();
+		indices.clear();
+	}
+
+	@Override
+	public void dispose() {
+		if (mesh != null) mesh.dispose();
+		mesh = null;
+	}
+}
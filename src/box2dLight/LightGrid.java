@@ -0,0 +1,176 @@
+package box2dLight;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Uniform grid of the lights bounds, so culling and point queries visit
+ * only the lights near the queried area.
+ *
+ * <p>Each light is stored in all the cells its bounds overlap and moved
+ * only when the range of these cells changes. Lights covering too many
+ * cells are kept in a separate list visited by every query.
+ */
+class LightGrid {
+
+	/** Lights covering more cells are not stored in the cells **/
+	static final int MAX_LIGHT_CELLS = 64;
+
+	final float cellSize;
+	final LongMap<Array<Light>> cells = new LongMap<Array<Light>>();
+	final Array<Light> largeLights = new Array<Light>(false, 16);
+	final Pool<Array<Light>> cellPool = new Pool<Array<Light>>() {
+		@Override
+		protected Array<Light> newObject() {
+			return new Array<Light>(false, 4);
+		}
+	};
+
+	/** Number of the last query, lights visited by it are stamped with it **/
+	int queryStamp = 0;
+	final Rectangle tmpBounds = new Rectangle();
+
+	LightGrid(float cellSize) {
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Moves the light to the cells overlapping its current bounds, if they
+	 * changed since last time
+	 */
+	void update(Light light) {
+		light.getRayBounds(tmpBounds);
+		final float margin = light.softShadowLength;
+		final int minX = cell(tmpBounds.x - margin);
+		final int minY = cell(tmpBounds.y - margin);
+		final int maxX = cell(tmpBounds.x + tmpBounds.width + margin);
+		final int maxY = cell(tmpBounds.y + tmpBounds.height + margin);
+		if (light.inGrid && light.gridMinX == minX && light.gridMinY == minY &&
+				light.gridMaxX == maxX && light.gridMaxY == maxY) return;
+
+		remove(light);
+		light.inGrid = true;
+		light.gridMinX = minX;
+		light.gridMinY = minY;
+		light.gridMaxX = maxX;
+		light.gridMaxY = maxY;
+		if ((long) (maxX - minX + 1) * (maxY - minY + 1) > MAX_LIGHT_CELLS) {
+			largeLights.add(light);
+			return;
+		}
+
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				final long key = key(x, y);
+				Array<Light> cell = cells.get(key);
+				if (cell == null) {
+					cell = cellPool.obtain();
+					cells.put(key, cell);
+				}
+				cell.add(light);
+			}
+		}
+	}
+
+	/** Removes the light from the grid **/
+	void remove(Light light) {
+		if (!light.inGrid) return;
+
+		light.inGrid = false;
+		if (largeLights.removeValue(light, true)) return;
+
+		for (int x = light.gridMinX; x <= light.gridMaxX; x++) {
+			for (int y = light.gridMinY; y <= light.gridMaxY; y++) {
+				final long key = key(x, y);
+				final Array<Light> cell = cells.get(key);
+				if (cell == null) continue;
+
+				cell.removeValue(light, true);
+				if (cell.size == 0) {
+					cells.remove(key);
+					cellPool.free(cell);
+				}
+			}
+		}
+	}
+
+	/** Removes all the lights from the grid **/
+	void clear() {
+		for (Array<Light> cell : cells.values()) {
+			for (Light light : cell) {
+				light.inGrid = false;
+			}
+			cellPool.free(cell);
+		}
+		for (Light light : largeLights) {
+			light.inGrid = false;
+		}
+		cells.clear();
+		largeLights.clear();
+	}
+
+	/**
+	 * @return if any light of the grid contains given point
+	 */
+	boolean pointAtLight(float x, float y) {
+		for (Light light : largeLights) {
+			if (light.contains(x, y)) return true;
+		}
+
+		final Array<Light> cell = cells.get(key(cell(x), cell(y)));
+		if (cell == null) return false;
+
+		for (Light light : cell) {
+			if (light.contains(x, y)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds lights which bounds overlap given area to the result, each of
+	 * them once
+	 *
+	 * @return false if the area covers more cells than the lights count,
+	 * so visiting all of them is cheaper and the result is left empty
+	 */
+	boolean query(float x1, float y1, float x2, float y2, int lightCount,
+			Array<Light> result) {
+		final int minX = cell(x1);
+		final int minY = cell(y1);
+		final int maxX = cell(x2);
+		final int maxY = cell(y2);
+		if ((long) (maxX - minX + 1) * (maxY - minY + 1) > lightCount) {
+			return false;
+		}
+
+		final int stamp = ++queryStamp;
+		for (Light light : largeLights) {
+			light.gridStamp = stamp;
+			result.add(light);
+		}
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				final Array<Light> cell = cells.get(key(x, y));
+				if (cell == null) continue;
+
+				for (Light light : cell) {
+					if (light.gridStamp == stamp) continue;
+
+					light.gridStamp = stamp;
+					result.add(light);
+				}
+			}
+		}
+		return true;
+	}
+
+	int cell(float coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+
+	static long key(int x, int y) {
+		return ((long) x << 32) | (y & 0xffffffffL);
+	}
+}
@@ -0,0 +1,90 @@
+package box2dLight;
+
+import shaders.InstancedLightShader;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Mesh.VertexDataType;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FloatArray;
+
+/**
+ * Instanced renderer of the x-ray point and cone lights.
+ *
+ * <p>All lights share one template fan, each light only adds its position,
+ * color, distance, direction and cone half angle to the instance buffer, so
+ * the lights don't need to build nor upload their own meshes.
+ *
+ * <p>NOTE: requires GL30
+ */
+class LightInstances implements Disposable {
+
+	/** Number of the template fan rays **/
+	static final int TEMPLATE_RAYS = 128;
+
+	/** Instance size in floats: x, y, packed color, radius, direction, half angle **/
+	static final int INSTANCE_SIZE = 6;
+
+	final ShaderProgram shader;
+	final Mesh mesh;
+	final FloatArray instances = new FloatArray();
+	int maxInstances = 0;
+
+	LightInstances() {
+		shader = InstancedLightShader.createInstancedLightShader();
+
+		// x: position along the arc from -1 to 1, y: 1 for the center
+		final float[] template = new float[(TEMPLATE_RAYS + 1) * 2];
+		template[0] = 0f;
+		template[1] = 1f;
+		for (int i = 0; i < TEMPLATE_RAYS; i++) {
+			template[i * 2 + 2] = -1f + 2f * i / (TEMPLATE_RAYS - 1f);
+			template[i * 2 + 3] = 0f;
+		}
+		mesh = new Mesh(VertexDataType.VertexBufferObjectWithVAO, true,
+				TEMPLATE_RAYS + 1, 0,
+				new VertexAttribute(Usage.Position, 2, "vertex_positions"));
+		mesh.setVertices(template);
+	}
+
+	/** Adds an instance of the light to be drawn **/
+	void add(PositionalLight light) {
+		instances.add(light.start.x, light.start.y, light.colorF,
+				light.distance);
+		instances.add(light.direction * MathUtils.degreesToRadians,
+				light.getArcHalfAngle() * MathUtils.degreesToRadians);
+	}
+
+	/** Draws and clears all added instances **/
+	void render(Matrix4 combined) {
+		final int count = instances.size / INSTANCE_SIZE;
+		if (count == 0) return;
+
+		if (count > maxInstances) {
+			if (maxInstances == 0) maxInstances = RayHandler.MAX_SHADOW_VERTICES;
+			while (maxInstances < count) maxInstances *= 2;
+			mesh.disableInstancedRendering();
+			mesh.enableInstancedRendering(false, maxInstances,
+					new VertexAttribute(Usage.Generic, 2, "i_position"),
+					new VertexAttribute(Usage.ColorPacked, 4, "i_color"),
+					new VertexAttribute(Usage.Generic, 3, "i_params"));
+		}
+		mesh.setInstanceData(instances.items, 0, instances.size);
+
+		shader.bind();
+		shader.setUniformMatrix("u_projTrans", combined);
+		mesh.render(shader, GL20.GL_TRIANGLE_FAN, 0, TEMPLATE_RAYS + 1);
+		instances.clear();
+	}
+
+	@Override
+	public void dispose() {
+		mesh.dispose();
+		shader.dispose();
+	}
+}
@@ -0,0 +1,23 @@
+package box2dLight;
+
+/**
+ * Listener of the tracked points entering and exiting the lights.
+ *
+ * <p>Events are raised at the end of {@link RayHandler#update()}, exits
+ * first, so the listener may track, untrack and move points or change the
+ * lights. Exits caused by removing or disabling lights in the listener are
+ * raised in the same update, other changes are evaluated on the next one.
+ *
+ * @see RayHandler#setLightTracking(float, LightListener)
+ */
+public interface LightListener {
+
+	/** Called when the point got inside of the light area **/
+	void lightEntered(TrackedPoint point, Light light);
+
+	/**
+	 * Called when the point got outside of the light area, or the light was
+	 * removed or disabled
+	 */
+	void lightExited(TrackedPoint point, Light light);
+}
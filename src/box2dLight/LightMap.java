@@ -25,6 +25,7 @@ class LightMap {
 	private ShaderProgram diffuseShader;
 
 	FrameBuffer shadowBuffer;
+	FrameBuffer staticBuffer;
 
 	boolean lightMapDrawingDisabled;
 
@@ -142,6 +143,45 @@ class LightMap {
 		Gdx.gl20.glEnable(GL20.GL_BLEND);
 	}
 
+	/**
+	 * @return frame buffer of the static light layer, created on first use
+	 */
+	FrameBuffer getStaticBuffer() {
+		if (staticBuffer == null) {
+			staticBuffer = new FrameBuffer(Format.RGBA8888, fboWidth,
+					fboHeight, false);
+		}
+		return staticBuffer;
+	}
+
+	/**
+	 * Adds the static light layer to the light map
+	 */
+	void addStaticLayer() {
+		frameBuffer.begin();
+		staticBuffer.getColorBufferTexture().bind(0);
+		Gdx.gl20.glEnable(GL20.GL_BLEND);
+		Gdx.gl20.glBlendFunc(GL20.GL_ONE, GL20.GL_ONE);
+		withoutShadowShader.bind();
+		lightMapMesh.render(withoutShadowShader, GL20.GL_TRIANGLE_FAN, 0, 4);
+		if (rayHandler.customViewport) {
+			frameBuffer.end(
+				rayHandler.viewportX,
+				rayHandler.viewportY,
+				rayHandler.viewportWidth,
+				rayHandler.viewportHeight);
+		} else {
+			frameBuffer.end();
+		}
+	}
+
+	void disposeStaticBuffer() {
+		if (staticBuffer != null) {
+			staticBuffer.dispose();
+			staticBuffer = null;
+		}
+	}
+
 	void dispose() {
 		disposeShaders();
 
@@ -150,6 +190,7 @@ class LightMap {
 		frameBuffer.dispose();
 		shadowBuffer.dispose();
 		pingPongBuffer.dispose();
+		disposeStaticBuffer();
 	}
 
 	void createShaders() {
@@ -0,0 +1,336 @@
+package box2dLight;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.ObjectSet;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Uniform grid of the tracked points, re-evaluates lights only for the
+ * points moved since last update and the points near the lights changed
+ * since last update, and raises enter and exit events of the changes.
+ */
+class LightTracker {
+
+	final RayHandler rayHandler;
+	final float cellSize;
+	LightListener listener;
+
+	final Array<TrackedPoint> points = new Array<TrackedPoint>(false, 16);
+	final LongMap<Array<TrackedPoint>> cells =
+			new LongMap<Array<TrackedPoint>>();
+	final Pool<Array<TrackedPoint>> cellPool = new Pool<Array<TrackedPoint>>() {
+		@Override
+		protected Array<TrackedPoint> newObject() {
+			return new Array<TrackedPoint>(false, 4);
+		}
+	};
+
+	/** Events queued until the end of update **/
+	final Array<TrackedPoint> enteredPoints = new Array<TrackedPoint>();
+	final Array<Light> enteredLights = new Array<Light>();
+	final Array<TrackedPoint> exitedPoints = new Array<TrackedPoint>();
+	final Array<Light> exitedLights = new Array<Light>();
+
+	final Rectangle tmpBounds = new Rectangle();
+	final Array<Light> tmpLights = new Array<Light>(false, 16);
+	final Array<Body> tmpBodies = new Array<Body>();
+	final ObjectSet<Body> worldBodies = new ObjectSet<Body>();
+	final Array<TrackedPoint> tmpPoints = new Array<TrackedPoint>();
+
+	LightTracker(RayHandler rayHandler, float cellSize,
+			LightListener listener) {
+		this.rayHandler = rayHandler;
+		this.cellSize = cellSize;
+		this.listener = listener;
+	}
+
+	void add(TrackedPoint point) {
+		points.add(point);
+		point.moved = true;
+	}
+
+	/** Stops tracking the point, without exit events **/
+	void remove(TrackedPoint point) {
+		if (!points.removeValue(point, true)) return;
+
+		removeFromCell(point);
+		point.lights.clear();
+	}
+
+	/**
+	 * Re-evaluates the lights changed since last update and the points
+	 * moved since last update, then raises the events
+	 */
+	void update() {
+		removeDestroyedBodies();
+		for (TrackedPoint point : points) {
+			point.updateBody();
+			if (point.moved) updateCell(point);
+		}
+
+		for (Light light : rayHandler.lightList) {
+			light.getRayBounds(tmpBounds);
+			final int minX = cell(tmpBounds.x);
+			final int minY = cell(tmpBounds.y);
+			final int maxX = cell(tmpBounds.x + tmpBounds.width);
+			final int maxY = cell(tmpBounds.y + tmpBounds.height);
+			final boolean sameBounds = light.inTracking &&
+					light.trackMinX == minX && light.trackMinY == minY &&
+					light.trackMaxX == maxX && light.trackMaxY == maxY;
+			if (sameBounds && light.refreshFrame != rayHandler.updateFrame) {
+				continue;
+			}
+			// rays recast to the same polygon, e.g. nothing moved in reach
+			final long polygonHash = light.getPolygonHash();
+			if (sameBounds && polygonHash == light.trackPolygonHash) continue;
+
+			light.trackPolygonHash = polygonHash;
+
+			// points which were inside are near the old bounds
+			if (light.inTracking) {
+				evaluate(light, light.trackMinX, light.trackMinY,
+						light.trackMaxX, light.trackMaxY);
+			}
+			light.inTracking = true;
+			light.trackMinX = minX;
+			light.trackMinY = minY;
+			light.trackMaxX = maxX;
+			light.trackMaxY = maxY;
+			evaluate(light, minX, minY, maxX, maxY);
+		}
+
+		for (TrackedPoint point : points) {
+			if (!point.moved) continue;
+
+			point.moved = false;
+			evaluate(point);
+		}
+
+		raiseEvents();
+	}
+
+	/**
+	 * Stops tracking the points which body is no longer in the world, before
+	 * its freed native body is read, and raises exit events of their lights
+	 */
+	void removeDestroyedBodies() {
+		if (rayHandler.world == null) return;
+
+		for (TrackedPoint point : points) {
+			if (point.body == null) continue;
+
+			if (worldBodies.size == 0) {
+				rayHandler.world.getBodies(tmpBodies);
+				worldBodies.addAll(tmpBodies);
+				tmpBodies.clear();
+			}
+			if (!worldBodies.contains(point.body)) tmpPoints.add(point);
+		}
+		worldBodies.clear();
+
+		for (TrackedPoint point : tmpPoints) {
+			for (Light light : point.lights) {
+				exitedPoints.add(point);
+				exitedLights.add(light);
+			}
+			remove(point);
+		}
+		tmpPoints.clear();
+	}
+
+	/**
+	 * Raises exit events of the points inside of the light, which is
+	 * removed or disabled
+	 */
+	void remove(Light light) {
+		light.inTracking = false;
+		for (TrackedPoint point : points) {
+			if (point.lights.removeValue(light, true)) {
+				exitedPoints.add(point);
+				exitedLights.add(light);
+			}
+		}
+	}
+
+	/** Stops tracking all the lights, without exit events **/
+	void clearLights() {
+		for (TrackedPoint point : points) {
+			point.lights.clear();
+		}
+		for (Light light : rayHandler.lightList) {
+			light.inTracking = false;
+		}
+		for (Light light : rayHandler.disabledLights) {
+			light.inTracking = false;
+		}
+	}
+
+	/**
+	 * Stops tracking all the points and lights, without exit events, the
+	 * points keep their lights
+	 */
+	void clear() {
+		for (Light light : rayHandler.lightList) {
+			light.inTracking = false;
+		}
+		for (Light light : rayHandler.disabledLights) {
+			light.inTracking = false;
+		}
+		for (Array<TrackedPoint> cell : cells.values()) {
+			cellPool.free(cell);
+		}
+		cells.clear();
+		for (TrackedPoint point : points) {
+			point.inCell = false;
+		}
+		points.clear();
+		enteredPoints.clear();
+		enteredLights.clear();
+		exitedPoints.clear();
+		exitedLights.clear();
+	}
+
+	/** Re-evaluates the light for the points in given cells range **/
+	void evaluate(Light light, int minX, int minY, int maxX, int maxY) {
+		if ((long) (maxX - minX + 1) * (maxY - minY + 1) > points.size) {
+			// visiting all the points is cheaper
+			for (TrackedPoint point : points) {
+				if (point.cellX >= minX && point.cellX <= maxX &&
+						point.cellY >= minY && point.cellY <= maxY) {
+					evaluate(point, light);
+				}
+			}
+			return;
+		}
+
+		for (int x = minX; x <= maxX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				final Array<TrackedPoint> cell = cells.get(LightGrid.key(x, y));
+				if (cell == null) continue;
+
+				for (TrackedPoint point : cell) {
+					evaluate(point, light);
+				}
+			}
+		}
+	}
+
+	/** Re-evaluates the lights containing the point and the lights near it **/
+	void evaluate(TrackedPoint point) {
+		final Array<Light> lights = point.lights;
+		for (int i = lights.size - 1; i >= 0; i--) {
+			final Light light = lights.get(i);
+			if (light.contains(point.x, point.y)) continue;
+
+			lights.removeIndex(i);
+			exitedPoints.add(point);
+			exitedLights.add(light);
+		}
+
+		Array<Light> candidates = rayHandler.lightList;
+		final LightGrid lightGrid = rayHandler.lightGrid;
+		if (lightGrid != null) {
+			tmpLights.clear();
+			if (lightGrid.query(point.x, point.y, point.x, point.y,
+					candidates.size, tmpLights)) {
+				candidates = tmpLights;
+			}
+		}
+		for (Light light : candidates) {
+			if (point.cellX < light.trackMinX || point.cellX > light.trackMaxX ||
+					point.cellY < light.trackMinY ||
+					point.cellY > light.trackMaxY) {
+				continue;
+			}
+			if (lights.contains(light, true)) continue;
+			if (!light.contains(point.x, point.y)) continue;
+
+			lights.add(light);
+			enteredPoints.add(point);
+			enteredLights.add(light);
+		}
+	}
+
+	/** Re-evaluates the light for the point **/
+	void evaluate(TrackedPoint point, Light light) {
+		final boolean inside = light.contains(point.x, point.y);
+		final int index = point.lights.indexOf(light, true);
+		if (inside == index >= 0) return;
+
+		if (inside) {
+			point.lights.add(light);
+			enteredPoints.add(point);
+			enteredLights.add(light);
+		} else {
+			point.lights.removeIndex(index);
+			exitedPoints.add(point);
+			exitedLights.add(light);
+		}
+	}
+
+	/**
+	 * Raises queued events, exits first, until no more are queued by the
+	 * listener
+	 */
+	void raiseEvents() {
+		// the listener may queue events, e.g. by removing lights
+		while (exitedPoints.size > 0 || enteredPoints.size > 0) {
+			for (int i = 0; i < exitedPoints.size; i++) {
+				if (listener != null) {
+					listener.lightExited(exitedPoints.get(i), exitedLights.get(i));
+				}
+			}
+			exitedPoints.clear();
+			exitedLights.clear();
+			for (int i = 0; i < enteredPoints.size; i++) {
+				if (listener != null) {
+					listener.lightEntered(enteredPoints.get(i),
+							enteredLights.get(i));
+				}
+			}
+			enteredPoints.clear();
+			enteredLights.clear();
+		}
+	}
+
+	/** Moves the point to the cell of its position, if it changed **/
+	void updateCell(TrackedPoint point) {
+		final int x = cell(point.x);
+		final int y = cell(point.y);
+		if (point.inCell && point.cellX == x && point.cellY == y) return;
+
+		removeFromCell(point);
+		point.inCell = true;
+		point.cellX = x;
+		point.cellY = y;
+		final long key = LightGrid.key(x, y);
+		Array<TrackedPoint> cell = cells.get(key);
+		if (cell == null) {
+			cell = cellPool.obtain();
+			cells.put(key, cell);
+		}
+		cell.add(point);
+	}
+
+	void removeFromCell(TrackedPoint point) {
+		if (!point.inCell) return;
+
+		point.inCell = false;
+		final long key = LightGrid.key(point.cellX, point.cellY);
+		final Array<TrackedPoint> cell = cells.get(key);
+		if (cell == null) return;
+
+		cell.removeValue(point, true);
+		if (cell.size == 0) {
+			cells.remove(key);
+			cellPool.free(cell);
+		}
+	}
+
+	int cell(float coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+}
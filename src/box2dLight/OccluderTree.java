@@ -0,0 +1,448 @@
+package box2dLight;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
+import com.badlogic.gdx.physics.box2d.ChainShape;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.EdgeShape;
+import com.badlogic.gdx.physics.box2d.Filter;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.Shape;
+import com.badlogic.gdx.physics.box2d.Transform;
+import com.badlogic.gdx.physics.box2d.World;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.ObjectSet;
+
+/**
+ * Java side copy of the fixtures geometry stored in a bounding volume
+ * hierarchy, used to cast light rays without going through JNI.
+ *
+ * <p>Fixtures are flattened to world space segments and circles, together
+ * with their filter data, when the tree is built. The tree is not modified
+ * by ray casting, so once built it can be queried from several threads at
+ * once.
+ *
+ * <p>Ray casting gives the same results as {@link World#rayCast}: polygons
+ * only block rays coming from outside, edges and chains block rays from both
+ * sides and circles block rays starting outside of them.
+ */
+class OccluderTree {
+
+	static final int TWO_SIDED = 0;
+	static final int ONE_SIDED = 1;
+	static final int CIRCLE = 2;
+
+	static final int LEAF_SIZE = 4;
+
+	/** Primitive data, 4 floats each: x1, y1, x2, y2 or x, y, radius, 0 **/
+	final FloatArray primData = new FloatArray();
+	/** Primitive info, 2 ints each: type, fixture index **/
+	final IntArray primInfo = new IntArray();
+	int primCount = 0;
+
+	/** Fixtures the primitives were taken from **/
+	final Array<Fixture> fixtures = new Array<Fixture>();
+	final ObjectSet<Fixture> fixtureSet = new ObjectSet<Fixture>();
+	/** Bodies of the fixtures **/
+	final Array<Body> bodies = new Array<Body>();
+	/** Filter data, 3 ints each: category bits, mask bits, group index **/
+	final IntArray filters = new IntArray();
+
+	/** Node bounds, 4 floats each: minX, minY, maxX, maxY **/
+	final FloatArray nodeBounds = new FloatArray();
+	/**
+	 * Node info, 2 ints each: first primitive and primitive count for
+	 * leaves, right child index and -1 for inner nodes (left child is always
+	 * the next node)
+	 */
+	final IntArray nodeInfo = new IntArray();
+	/** Primitive order referenced by the leaves **/
+	final IntArray order = new IntArray();
+
+	private float[] centers = new float[0];
+
+	private final Vector2 tmpVec = new Vector2();
+	private final Array<Fixture> tmpFixtures = new Array<Fixture>();
+
+	/**
+	 * Removes all the primitives and nodes
+	 */
+	void clear() {
+		primData.clear();
+		primInfo.clear();
+		primCount = 0;
+		fixtures.clear();
+		fixtureSet.clear();
+		bodies.clear();
+		filters.clear();
+		nodeBounds.clear();
+		nodeInfo.clear();
+		order.clear();
+	}
+
+	/**
+	 * Rebuilds this tree from the fixtures of given world
+	 * 
+	 * @param skipped
+	 *            tree whose fixtures are left out, may be {@code null}
+	 */
+	void build(World world, OccluderTree skipped) {
+		clear();
+		world.getFixtures(tmpFixtures);
+		for (Fixture fixture : tmpFixtures) {
+			if (skipped == null || !skipped.contains(fixture)) {
+				addFixture(fixture);
+			}
+		}
+		tmpFixtures.clear();
+		buildNodes();
+	}
+
+	/**
+	 * Rebuilds this tree from the fixtures of static bodies of given world
+	 */
+	void buildStatic(World world) {
+		clear();
+		world.getFixtures(tmpFixtures);
+		for (Fixture fixture : tmpFixtures) {
+			if (fixture.getBody().getType() == BodyType.StaticBody) {
+				addFixture(fixture);
+			}
+		}
+		tmpFixtures.clear();
+		buildNodes();
+	}
+
+	/**
+	 * @return if given fixture was added to this tree
+	 */
+	boolean contains(Fixture fixture) {
+		return fixtureSet.contains(fixture);
+	}
+
+	/**
+	 * @return if this tree holds no primitives
+	 */
+	boolean isEmpty() {
+		return primCount == 0;
+	}
+
+	/**
+	 * Adds world space geometry of the fixture, {@link #buildNodes()} must be
+	 * called after all fixtures are added
+	 */
+	void addFixture(Fixture fixture) {
+		Body body = fixture.getBody();
+		Shape shape = fixture.getShape();
+		Filter filter = fixture.getFilterData();
+		int index = fixtures.size;
+		Transform transform = body.getTransform();
+
+		switch (shape.getType()) {
+		case Polygon: {
+			PolygonShape pShape = (PolygonShape) shape;
+			int count = pShape.getVertexCount();
+			pShape.getVertex(count - 1, tmpVec);
+			transform.mul(tmpVec);
+			float prevX = tmpVec.x;
+			float prevY = tmpVec.y;
+			for (int n = 0; n < count; n++) {
+				pShape.getVertex(n, tmpVec);
+				transform.mul(tmpVec);
+				addPrimitive(ONE_SIDED, index, prevX, prevY, tmpVec.x, tmpVec.y);
+				prevX = tmpVec.x;
+				prevY = tmpVec.y;
+			}
+			break;
+		}
+		case Chain: {
+			ChainShape cShape = (ChainShape) shape;
+			int count = cShape.getVertexCount();
+			cShape.getVertex(0, tmpVec);
+			transform.mul(tmpVec);
+			float prevX = tmpVec.x;
+			float prevY = tmpVec.y;
+			for (int n = 1; n < count; n++) {
+				cShape.getVertex(n, tmpVec);
+				transform.mul(tmpVec);
+				addPrimitive(TWO_SIDED, index, prevX, prevY, tmpVec.x, tmpVec.y);
+				prevX = tmpVec.x;
+				prevY = tmpVec.y;
+			}
+			break;
+		}
+		case Edge: {
+			EdgeShape eShape = (EdgeShape) shape;
+			eShape.getVertex1(tmpVec);
+			transform.mul(tmpVec);
+			float x1 = tmpVec.x;
+			float y1 = tmpVec.y;
+			eShape.getVertex2(tmpVec);
+			transform.mul(tmpVec);
+			addPrimitive(TWO_SIDED, index, x1, y1, tmpVec.x, tmpVec.y);
+			break;
+		}
+		case Circle: {
+			CircleShape circle = (CircleShape) shape;
+			tmpVec.set(circle.getPosition());
+			transform.mul(tmpVec);
+			addPrimitive(CIRCLE, index, tmpVec.x, tmpVec.y,
+					circle.getRadius(), 0f);
+			break;
+		}
+		}
+
+		fixtures.add(fixture);
+		fixtureSet.add(fixture);
+		bodies.add(body);
+		filters.add(filter.categoryBits);
+		filters.add(filter.maskBits);
+		filters.add(filter.groupIndex);
+	}
+
+	private void addPrimitive(int type, int fixture,
+			float a, float b, float c, float d) {
+		primData.add(a, b, c, d);
+		primInfo.add(type);
+		primInfo.add(fixture);
+		primCount++;
+	}
+
+	/**
+	 * Builds the hierarchy over all the added primitives
+	 */
+	void buildNodes() {
+		nodeBounds.clear();
+		nodeInfo.clear();
+		order.clear();
+		if (primCount == 0) return;
+
+		if (centers.length < primCount * 2) {
+			centers = new float[primCount * 2];
+		}
+		float[] data = primData.items;
+		int[] info = primInfo.items;
+		for (int i = 0; i < primCount; i++) {
+			int p = i * 4;
+			order.add(i);
+			if (info[i * 2] == CIRCLE) {
+				centers[i * 2] = data[p];
+				centers[i * 2 + 1] = data[p + 1];
+			} else {
+				centers[i * 2] = (data[p] + data[p + 2]) * 0.5f;
+				centers[i * 2 + 1] = (data[p + 1] + data[p + 3]) * 0.5f;
+			}
+		}
+		buildNode(0, primCount);
+	}
+
+	private void buildNode(int from, int to) {
+		int node = nodeInfo.size / 2;
+		float minX = Float.POSITIVE_INFINITY;
+		float minY = Float.POSITIVE_INFINITY;
+		float maxX = Float.NEGATIVE_INFINITY;
+		float maxY = Float.NEGATIVE_INFINITY;
+		float cMinX = Float.POSITIVE_INFINITY;
+		float cMinY = Float.POSITIVE_INFINITY;
+		float cMaxX = Float.NEGATIVE_INFINITY;
+		float cMaxY = Float.NEGATIVE_INFINITY;
+		float[] data = primData.items;
+		int[] info = primInfo.items;
+		int[] ord = order.items;
+		for (int i = from; i < to; i++) {
+			int prim = ord[i];
+			int p = prim * 4;
+			if (info[prim * 2] == CIRCLE) {
+				float r = data[p + 2];
+				minX = Math.min(minX, data[p] - r);
+				minY = Math.min(minY, data[p + 1] - r);
+				maxX = Math.max(maxX, data[p] + r);
+				maxY = Math.max(maxY, data[p + 1] + r);
+			} else {
+				minX = Math.min(minX, Math.min(data[p], data[p + 2]));
+				minY = Math.min(minY, Math.min(data[p + 1], data[p + 3]));
+				maxX = Math.max(maxX, Math.max(data[p], data[p + 2]));
+				maxY = Math.max(maxY, Math.max(data[p + 1], data[p + 3]));
+			}
+			float cx = centers[prim * 2];
+			float cy = centers[prim * 2 + 1];
+			cMinX = Math.min(cMinX, cx);
+			cMinY = Math.min(cMinY, cy);
+			cMaxX = Math.max(cMaxX, cx);
+			cMaxY = Math.max(cMaxY, cy);
+		}
+		nodeBounds.add(minX, minY, maxX, maxY);
+
+		int count = to - from;
+		if (count <= LEAF_SIZE) {
+			nodeInfo.add(from);
+			nodeInfo.add(count);
+			return;
+		}
+
+		// split at the middle of the longest axis of the centers bounds
+		int axis = (cMaxX - cMinX) >= (cMaxY - cMinY) ? 0 : 1;
+		float split = axis == 0 ?
+				(cMinX + cMaxX) * 0.5f : (cMinY + cMaxY) * 0.5f;
+		int mid = from;
+		for (int i = from; i < to; i++) {
+			if (centers[ord[i] * 2 + axis] < split) {
+				int tmp = ord[i];
+				ord[i] = ord[mid];
+				ord[mid] = tmp;
+				mid++;
+			}
+		}
+		if (mid == from || mid == to) mid = (from + to) / 2;
+
+		nodeInfo.add(0);
+		nodeInfo.add(-1);
+		buildNode(from, mid);
+		nodeInfo.items[node * 2] = nodeInfo.size / 2;
+		buildNode(mid, to);
+	}
+
+	/**
+	 * Casts the ray against this tree, reporting the closest fixture
+	 * accepted by the light filters to the light ray at
+	 * {@link Light#m_index}.
+	 *
+	 * <p>Only hits closer than the fraction already stored for that ray are
+	 * reported, so several trees can be cast in a row.
+	 *
+	 * @return if any fixture was hit
+	 */
+	boolean rayCast(Light light, float x1, float y1, float x2, float y2) {
+		if (primCount == 0) return false;
+
+		final int index = light.m_index;
+		final float maxFraction = light.f[index];
+		final float dx = x2 - x1;
+		final float dy = y2 - y1;
+		float fraction = castNode(light, 0, x1, y1, dx, dy, maxFraction);
+		if (fraction >= maxFraction) return false;
+
+		light.mx[index] = x1 + dx * fraction;
+		light.my[index] = y1 + dy * fraction;
+		light.f[index] = fraction;
+		return true;
+	}
+
+	/**
+	 * @return closest accepted hit fraction below {@code best} within the
+	 * given node subtree, or {@code best} if none
+	 */
+	private float castNode(Light light, int node,
+			float x1, float y1, float dx, float dy, float best) {
+		if (!rayOverlaps(node, x1, y1, dx, dy, best)) return best;
+
+		final int[] info = nodeInfo.items;
+		final int count = info[node * 2 + 1];
+		if (count < 0) {
+			best = castNode(light, node + 1, x1, y1, dx, dy, best);
+			return castNode(light, info[node * 2], x1, y1, dx, dy, best);
+		}
+
+		final int first = info[node * 2];
+		final int[] ord = order.items;
+		for (int i = first; i < first + count; i++) {
+			final int prim = ord[i];
+			final float t = intersect(prim, x1, y1, dx, dy);
+			if (t < best && accepts(light, primInfo.items[prim * 2 + 1])) {
+				best = t;
+			}
+		}
+		return best;
+	}
+
+	private boolean rayOverlaps(int node,
+			float x1, float y1, float dx, float dy, float maxFraction) {
+		final float[] b = nodeBounds.items;
+		final int n = node * 4;
+		float tMin = 0f;
+		float tMax = maxFraction;
+
+		if (dx == 0f) {
+			if (x1 < b[n] || x1 > b[n + 2]) return false;
+		} else {
+			final float inv = 1f / dx;
+			float t1 = (b[n] - x1) * inv;
+			float t2 = (b[n + 2] - x1) * inv;
+			if (t1 > t2) { float tmp = t1; t1 = t2; t2 = tmp; }
+			tMin = Math.max(tMin, t1);
+			tMax = Math.min(tMax, t2);
+			if (tMin > tMax) return false;
+		}
+
+		if (dy == 0f) {
+			if (y1 < b[n + 1] || y1 > b[n + 3]) return false;
+		} else {
+			final float inv = 1f / dy;
+			float t1 = (b[n + 1] - y1) * inv;
+			float t2 = (b[n + 3] - y1) * inv;
+			if (t1 > t2) { float tmp = t1; t1 = t2; t2 = tmp; }
+			tMin = Math.max(tMin, t1);
+			tMax = Math.min(tMax, t2);
+			if (tMin > tMax) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return hit fraction of the ray with given primitive or
+	 * {@link Float#POSITIVE_INFINITY} if it's missed
+	 */
+	private float intersect(int prim,
+			float x1, float y1, float dx, float dy) {
+		final float[] data = primData.items;
+		final int p = prim * 4;
+		final int type = primInfo.items[prim * 2];
+
+		if (type == CIRCLE) {
+			final float sx = x1 - data[p];
+			final float sy = y1 - data[p + 1];
+			final float r = data[p + 2];
+			final float b = sx * sx + sy * sy - r * r;
+			final float c = sx * dx + sy * dy;
+			final float rr = dx * dx + dy * dy;
+			final float sigma = c * c - rr * b;
+			if (sigma < 0f || rr < 1.1920929E-7f) return Float.POSITIVE_INFINITY;
+			final float a = -(c + (float) Math.sqrt(sigma));
+			if (a < 0f || a > rr) return Float.POSITIVE_INFINITY;
+			return a / rr;
+		}
+
+		final float ex = data[p + 2] - data[p];
+		final float ey = data[p + 3] - data[p + 1];
+		final float denom = dx * ey - dy * ex;
+		// polygons are counter clockwise, so rays leaving them have positive
+		// denominators
+		if (denom == 0f || (type == ONE_SIDED && denom > 0f))
+			return Float.POSITIVE_INFINITY;
+
+		final float wx = data[p] - x1;
+		final float wy = data[p + 1] - y1;
+		final float t = (wx * ey - wy * ex) / denom;
+		final float s = (wx * dy - wy * dx) / denom;
+		if (t < 0f || t > 1f || s < 0f || s > 1f)
+			return Float.POSITIVE_INFINITY;
+		return t;
+	}
+
+	/**
+	 * @return if fixture with given index should cast shadows for the light
+	 */
+	boolean accepts(Light light, int fixture) {
+		final int[] filter = filters.items;
+		final int f = fixture * 3;
+		return light.acceptsOccluder(
+				bodies.get(fixture),
+				(short) filter[f],
+				(short) filter[f + 1],
+				(short) filter[f + 2]);
+	}
+}
@@ -84,7 +84,8 @@ public class PointLight extends PositionalLight {
 	}
 	
 	/** Updates light basing on it's distance and rayNum **/
-	void setEndPoints() {
+	@Override
+	protected void setEndPoints() {
 		float angleNum = 360f / (rayNum - 1);
 		for (int i = 0; i < rayNum; i++) {
 			final float angle = angleNum * i;
@@ -5,10 +5,13 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.*;
 import com.badlogic.gdx.graphics.Mesh.VertexDataType;
 import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.math.Intersector;
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.*;
+import com.badlogic.gdx.utils.FloatArray;
 
 /**
  * Abstract base class for all positional lights
@@ -34,6 +37,70 @@ public abstract class PositionalLight extends Light {
 
 	protected float endX[];
 	protected float endY[];
+
+	/** Number of evenly distributed rays set for this light **/
+	protected int baseRayNum;
+
+	/** Number of evenly distributed rays used by level of detail **/
+	static final float LOD_MARGIN = 1.25f;
+	protected int lodRayNum;
+
+	/** Aimed rays variables **/
+	static final float EXACT_RAY_OFFSET = 0.0001f;
+	protected boolean exactShadows = false;
+	protected boolean adaptiveRays = false;
+	protected boolean exactRays = false;
+	protected boolean aimedRays = false;
+
+	/** Incremental ray casting variables **/
+	float castX, castY, castDirection, castDistance, castArc;
+	float castColorF, castSoftLength;
+	boolean castSoft;
+	int castRayNum;
+
+	/** Settled lights variables **/
+	boolean castAsleep = false;
+	boolean awakeBodyFound = false;
+	int reachFixtureCount = -1;
+	int castFixtureCount = -1;
+	int castBodyCount = -1;
+
+	/** If the rays were last set without casting, by the cast layout **/
+	boolean uncast = false;
+
+	/** Local mesh variables, set if meshes are built around the origin **/
+	boolean localMesh = false;
+	float localDirection, localDistance, localArc, localColorF;
+	float localSoftLength;
+	boolean localSoft;
+	int localRayNum;
+	boolean occluderFound = false;
+	final QueryCallback occluderCallback = new QueryCallback() {
+		@Override
+		public boolean reportFixture(Fixture fixture) {
+			occluderFound = acceptsFixture(fixture);
+			return !occluderFound;
+		}
+	};
+	final QueryCallback awakeBodyCallback = new QueryCallback() {
+		@Override
+		public boolean reportFixture(Fixture fixture) {
+			reachFixtureCount++;
+			final Body fixtureBody = fixture.getBody();
+			awakeBodyFound = fixtureBody.getType() != BodyDef.BodyType.StaticBody &&
+					fixtureBody.isAwake();
+			return !awakeBodyFound;
+		}
+	};
+	protected final FloatArray rayAngles = new FloatArray();
+	protected final OccluderTree localOccluders = new OccluderTree();
+	final QueryCallback localOccludersCallback = new QueryCallback() {
+		@Override
+		public boolean reportFixture(Fixture fixture) {
+			localOccluders.addFixture(fixture);
+			return true;
+		}
+	};
 	
 	/** 
 	 * Creates new positional light and automatically adds it to the specified
@@ -60,17 +127,29 @@ public abstract class PositionalLight extends Light {
 		start.x = x;
 		start.y = y;
 
+		createMeshes(vertexNum);
+		setMesh();
+	}
+
+	/**
+	 * Creates light meshes able to hold given number of vertices, disposing
+	 * the previous ones
+	 */
+	protected void createMeshes(int vertices) {
+		if (lightMesh != null) lightMesh.dispose();
+		if (softShadowMesh != null) softShadowMesh.dispose();
+		if (rayHandler.headless) return;
+
 		Mesh.VertexDataType vertexDataType = Mesh.VertexDataType.VertexArray;
 		if (Gdx.gl30 != null) {
 			vertexDataType = VertexDataType.VertexBufferObjectWithVAO;
 		}
-		lightMesh = new Mesh(vertexDataType, false, vertexNum, 0, new VertexAttribute(Usage.Position, 2,
+		lightMesh = new Mesh(vertexDataType, false, vertices, 0, new VertexAttribute(Usage.Position, 2,
 			"vertex_positions"), new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
 			new VertexAttribute(Usage.Generic, 1, "s"));
-		softShadowMesh = new Mesh(vertexDataType, false, vertexNum * 2, 0, new VertexAttribute(Usage.Position, 2,
+		softShadowMesh = new Mesh(vertexDataType, false, vertices * 2, 0, new VertexAttribute(Usage.Position, 2,
 			"vertex_positions"), new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
 			new VertexAttribute(Usage.Generic, 1, "s"));
-		setMesh();
 	}
 	
 	@Override
@@ -84,22 +163,158 @@ public abstract class PositionalLight extends Light {
 		updateMesh();
 	}
 	
+	@Override
+	protected void updateMesh() {
+		if (isInstanced()) {
+			refreshUncast();
+			if (staticLight) rayHandler.staticLayerDirty = true;
+			return;
+		}
+		if (rayHandler.transformOnlyUpdates && !deferred && isUnoccluded()) {
+			refreshUncast();
+			if (staticLight) rayHandler.staticLayerDirty = true;
+			updateUnoccluded();
+			return;
+		}
+		super.updateMesh();
+		uncast = false;
+	}
+
+	/**
+	 * Stamps the refresh frame for the updates setting the rays without
+	 * casting them, only if the light moved or its rays layout changed
+	 * since the previous such update
+	 */
+	void refreshUncast() {
+		if (uncast && castX == start.x && castY == start.y &&
+				castDirection == direction && castDistance == distance &&
+				castArc == getArcHalfAngle() && castRayNum == rayNum) return;
+
+		uncast = true;
+		castX = start.x;
+		castY = start.y;
+		castDirection = direction;
+		castDistance = distance;
+		castArc = getArcHalfAngle();
+		castRayNum = rayNum;
+		castFrame = -1;
+		refreshFrame = rayHandler.updateFrame;
+	}
+
+	/**
+	 * @return if nothing in reach can occlude this light rays, so its
+	 * meshes only need to be moved and rotated
+	 */
+	boolean isUnoccluded() {
+		if (exactShadows || adaptiveRays) return false;
+		if (rayHandler.world == null || xray || rayHandler.pseudo3d) {
+			return true;
+		}
+
+		// soft shadows reach past the rays ends
+		final float reach = distance + (soft ? softShadowLength : 0f);
+		occluderFound = false;
+		rayHandler.world.QueryAABB(occluderCallback,
+				start.x - reach, start.y - reach,
+				start.x + reach, start.y + reach);
+		return !occluderFound;
+	}
+
+	/**
+	 * Sets all rays of this light to their full length and builds local
+	 * meshes around the origin only if their shape changed
+	 */
+	void updateUnoccluded() {
+		prepareRays();
+		for (int i = 0; i < rayNum; i++) {
+			f[i] = 1f;
+			mx[i] = start.x + endX[i];
+			my[i] = start.y + endY[i];
+		}
+		castFrame = -1;
+
+		if (localMesh && localRayNum == rayNum &&
+				localDistance == distance && localArc == getArcHalfAngle() &&
+				localColorF == getMeshColorF() && localSoft == soft &&
+				localSoftLength == softShadowLength) return;
+
+		buildMesh(start.x, start.y);
+		localMesh = true;
+		localDirection = direction;
+		localDistance = distance;
+		localArc = getArcHalfAngle();
+		localColorF = getMeshColorF();
+		localSoft = soft;
+		localSoftLength = softShadowLength;
+		localRayNum = rayNum;
+	}
+
 	@Override
 	void render() {
 		if (rayHandler.culling && culled) return;
 
 		rayHandler.lightRenderedLastFrame++;
-		lightMesh.render(rayHandler.lightShader, GL20.GL_TRIANGLE_FAN, 0, vertexNum);
+		if (isInstanced()) {
+			rayHandler.lightInstances.add(this);
+			return;
+		}
+
+		final ShaderProgram shader = rayHandler.customLightShader != null ?
+				rayHandler.customLightShader : rayHandler.lightShader;
+		if (localMesh) {
+			shader.setUniformMatrix("u_projTrans", rayHandler.lightTransform
+					.set(rayHandler.combined)
+					.translate(start.x, start.y, 0f)
+					.rotate(0f, 0f, 1f, direction - localDirection));
+		}
+
+		// drawn with the shader the transform was set on
+		lightMesh.render(shader, GL20.GL_TRIANGLE_FAN, 0, vertexNum);
 
 		if (soft && !xray && !rayHandler.pseudo3d) {
 			softShadowMesh.render(
-				rayHandler.lightShader,
+				shader,
 				GL20.GL_TRIANGLE_STRIP,
 				0,
 				(vertexNum - 1) * 2);
 		}
+
+		if (localMesh) {
+			shader.setUniformMatrix("u_projTrans", rayHandler.combined);
+		}
+	}
+
+	@Override
+	void batch(LightBatch batch) {
+		if (rayHandler.culling && culled) return;
+
+		rayHandler.lightRenderedLastFrame++;
+		if (isInstanced()) {
+			rayHandler.lightInstances.add(this);
+			return;
+		}
+
+		if (localMesh) {
+			batch.setTransform(start.x, start.y, direction - localDirection);
+		}
+
+		batch.addFan(lightMesh, vertexNum, colorF);
+
+		if (soft && !xray && !rayHandler.pseudo3d) {
+			batch.addStrip(softShadowMesh, (vertexNum - 1) * 2, colorF);
+		}
+
+		if (localMesh) batch.setTransform(0f, 0f, 0f);
 	}
 	
+	/**
+	 * @return if this light is rendered as an instance of the shared fan,
+	 * without casting rays nor building its own meshes
+	 */
+	boolean isInstanced() {
+		return xray && rayHandler.lightInstances != null;
+	}
+
 	@Override
 	public void attachToBody(Body body) {
 		attachToBody(body, 0f, 0f, 0f);
@@ -181,36 +396,121 @@ public abstract class PositionalLight extends Light {
 		if (staticLight) dirty = true;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Intensity falls off linearly with the distance from the light
+	 * position
+	 */
+	@Override
+	public float getIntensity(float x, float y) {
+		if (!contains(x, y)) return 0f;
+
+		return 1f - start.dst(x, y) / distance;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Polygon goes along the rays ends, starting at the light position
+	 * for lights not covering the full circle
+	 */
+	@Override
+	public int getPolygonVertexCount() {
+		return getArcHalfAngle() < 180f ? rayNum + 1 : rayNum;
+	}
+
+	@Override
+	float getPolygonX(int index) {
+		if (getArcHalfAngle() < 180f) {
+			if (index == 0) return start.x;
+			index--;
+		}
+		// instanced lights don't update their ray ends
+		return isInstanced() ? start.x + endX[index] : mx[index];
+	}
+
+	@Override
+	float getPolygonY(int index) {
+		if (getArcHalfAngle() < 180f) {
+			if (index == 0) return start.y;
+			index--;
+		}
+		return isInstanced() ? start.y + endY[index] : my[index];
+	}
+
 	public boolean contains(Vector2 pos) {
 		return contains(pos.x, pos.y);
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>Light polygon is star-shaped around its position, so the point is
+	 * checked only against the two rays around its angle, found with a
+	 * binary search over the rays sweep.
+	 */
 	@Override
 	public boolean contains(float x, float y) {
 		// fast fail
-		final float x_d = start.x - x;
-		final float y_d = start.y - y;
-		final float dst2 = x_d * x_d + y_d * y_d;
-		if (distance * distance <= dst2) return false;
-
-		// actual check
-		boolean oddNodes = false;
-		float x2 = mx[rayNum] = start.x;
-		float y2 = my[rayNum] = start.y;
-		float x1, y1;
-		for (int i = 0; i <= rayNum; x2 = x1, y2 = y1, ++i) {
-			x1 = mx[i];
-			y1 = my[i];
-			if (((y1 < y) && (y2 >= y)) || (y1 >= y) && (y2 < y)) {
-				if ((y - y1) / (y2 - y1) * (x2 - x1) < (x - x1)) oddNodes = !oddNodes;
+		final float dx = x - start.x;
+		final float dy = y - start.y;
+		if (distance * distance <= dx * dx + dy * dy) return false;
+		if (rayNum < 2) return false;
+
+		// rays sweep counter clockwise for positive sign, clockwise otherwise
+		final float c0 = cos[0];
+		final float s0 = sin[0];
+		final float sign = c0 * sin[1] - s0 * cos[1] < 0f ? -1f : 1f;
+		final float angle = getSweepAngle(c0, s0, dx, dy, sign);
+		if (angle > getArcHalfAngle() * MathUtils.degreesToRadians * 2f) {
+			return false;
+		}
+
+		int low = 0;
+		int high = rayNum - 1;
+		while (high - low > 1) {
+			final int mid = (low + high) >>> 1;
+			if (getSweepAngle(c0, s0, cos[mid], sin[mid], sign) <= angle) {
+				low = mid;
+			} else {
+				high = mid;
 			}
 		}
-		return oddNodes;
+
+		// instanced lights don't update their ray ends
+		final boolean instanced = isInstanced();
+		final float ax = instanced ? start.x + endX[low] : mx[low];
+		final float ay = instanced ? start.y + endY[low] : my[low];
+		final float bx = instanced ? start.x + endX[high] : mx[high];
+		final float by = instanced ? start.y + endY[high] : my[high];
+
+		// point must be on the light position side of the rays ends segment
+		final float ex = bx - ax;
+		final float ey = by - ay;
+		final float startSide = ex * (start.y - ay) - ey * (start.x - ax);
+		final float pointSide = ex * (y - ay) - ey * (x - ax);
+		return startSide > 0f ? pointSide >= 0f :
+				startSide < 0f && pointSide <= 0f;
+	}
+
+	/**
+	 * @return angle from the first ray direction to given direction along
+	 * the rays sweep, between 0 and 2 PI
+	 */
+	static float getSweepAngle(float c0, float s0, float x, float y,
+			float sign) {
+		float angle = (float) Math.atan2(sign * (c0 * y - s0 * x),
+				c0 * x + s0 * y);
+		if (angle < 0f) angle += MathUtils.PI2;
+		return angle;
 	}
 	
 	@Override
 	protected void setRayNum(int rays) {
 		super.setRayNum(rays);
+		baseRayNum = rayNum;
+		lodRayNum = rayNum;
 		
 		sin = new float[rays];
 		cos = new float[rays];
@@ -238,19 +538,359 @@ public abstract class PositionalLight extends Light {
 		setDirection(bodyAngleOffset + angle * MathUtils.radiansToDegrees);
 	}
 	
-	protected void updateMesh() {
+	/**
+	 * Updates rays directions basing on this light distance, direction and
+	 * {@link #rayNum}
+	 */
+	protected void setEndPoints() {
+	}
+
+	/**
+	 * @return half of the arc covered by this light rays in degrees, centered
+	 * over direction
+	 */
+	protected float getArcHalfAngle() {
+		return 180f;
+	}
+
+	@Override
+	protected void prepareRays() {
+		final boolean aimed = rayHandler.world != null &&
+				!xray && !rayHandler.pseudo3d;
+		final boolean wasAimed = aimedRays;
+		exactRays = aimed && exactShadows;
+		aimedRays = aimed && (exactShadows || adaptiveRays);
+		final int uniformRays = updateLodRayNum();
+		if (aimedRays) {
+			updateAimedRays();
+		} else if (rayNum != uniformRays || wasAimed) {
+			rayNum = uniformRays;
+			vertexNum = rayNum + 1;
+			setEndPoints();
+		}
+	}
+
+	/**
+	 * Picks number of evenly distributed rays basing on this light size on
+	 * screen if rays level of detail is enabled
+	 * 
+	 * @return number of evenly distributed rays to use
+	 */
+	protected int updateLodRayNum() {
+		final float pixelsPerRay = rayHandler.pixelsPerRay;
+		if (pixelsPerRay <= 0f) {
+			lodRayNum = baseRayNum;
+			return lodRayNum;
+		}
+
+		final float arcLength = distance * rayHandler.getPixelScale() *
+				getArcHalfAngle() * MathUtils.degreesToRadians * 2f;
+		final int rays = MathUtils.ceil(arcLength / pixelsPerRay) + 1;
+		final int target = Math.max(MIN_RAYS, Math.min(baseRayNum, rays));
+		final int margined = Math.min(baseRayNum,
+				MathUtils.ceil(target * LOD_MARGIN));
+		if (target > lodRayNum || margined * LOD_MARGIN < lodRayNum) {
+			lodRayNum = margined;
+		}
+		return lodRayNum;
+	}
+
+	@Override
+	protected void castRays() {
+		final boolean casting = rayHandler.world != null &&
+				!xray && !rayHandler.pseudo3d;
+		final boolean changedOnly = casting &&
+				rayHandler.incrementalRayCasting && hasSameRays();
+		final BodyJournal journal = rayHandler.bodyJournal;
 		for (int i = 0; i < rayNum; i++) {
+			tmpEnd.x = endX[i] + start.x;
+			tmpEnd.y = endY[i] + start.y;
+			if (changedOnly && !journal.overlapsSegment(
+					start.x, start.y, tmpEnd.x, tmpEnd.y)) continue;
+
 			m_index = i;
 			f[i] = 1f;
-			tmpEnd.x = endX[i] + start.x;
 			mx[i] = tmpEnd.x;
-			tmpEnd.y = endY[i] + start.y;
 			my[i] = tmpEnd.y;
-			if (rayHandler.world != null && !xray && !rayHandler.pseudo3d) {
-				rayHandler.world.rayCast(ray, start, tmpEnd);
+			if (casting) {
+				if (exactRays) {
+					localOccluders.rayCast(
+						this, start.x, start.y, tmpEnd.x, tmpEnd.y);
+				} else {
+					rayCast(start, tmpEnd);
+				}
 			}
 		}
-		setMesh();
+
+		if (casting && !aimedRays) {
+			storeCastState();
+			castX = start.x;
+			castY = start.y;
+			castDirection = direction;
+			castDistance = distance;
+			castArc = getArcHalfAngle();
+			castRayNum = rayNum;
+			castColorF = getMeshColorF();
+			castSoftLength = softShadowLength;
+			castSoft = soft;
+		} else {
+			castFrame = -1;
+		}
+	}
+
+	/**
+	 * @return if the rays of this light are laid out the same way as on the
+	 * previous update, so only the ones crossing changed bodies need to be
+	 * recast
+	 */
+	protected boolean hasSameRays() {
+		return !exactShadows && !adaptiveRays && hasSameCastState() &&
+				castX == start.x && castY == start.y &&
+				castDirection == direction && castDistance == distance &&
+				castArc == getArcHalfAngle() && castRayNum == rayNum;
+	}
+
+	@Override
+	protected boolean isSettled() {
+		if (rayHandler.world == null) return false;
+
+		final BodyJournal journal = rayHandler.bodyJournal;
+		boolean asleep = true;
+		if (journal == null) {
+			asleep = body == null || !body.isAwake();
+			reachFixtureCount = -1;
+			if (asleep) {
+				awakeBodyFound = false;
+				reachFixtureCount = 0;
+				rayHandler.world.QueryAABB(awakeBodyCallback,
+						start.x - distance, start.y - distance,
+						start.x + distance, start.y + distance);
+				asleep = !awakeBodyFound;
+			}
+			// sleeping and static bodies created or destroyed since the
+			// previous update change the counts
+			final int bodyCount = rayHandler.world.getBodyCount();
+			final boolean sameBodies = castBodyCount == bodyCount &&
+					castFixtureCount == reachFixtureCount;
+			final boolean wasAsleep = castAsleep;
+			castAsleep = asleep;
+			castBodyCount = bodyCount;
+			castFixtureCount = reachFixtureCount;
+			asleep &= wasAsleep && sameBodies;
+		}
+
+		if (!asleep || staticLight || !hasSameRays() ||
+				castColorF != getMeshColorF() || castSoftLength != softShadowLength ||
+				castSoft != soft) return false;
+
+		return journal == null || !journal.overlapsBounds(
+				start.x - distance, start.y - distance,
+				start.x + distance, start.y + distance);
+	}
+
+	/**
+	 * Collects the fixtures in reach of this light and aims its rays at the
+	 * corners of their shadows
+	 * 
+	 * <p>Rays are aimed just beside every fixture vertex and along tangents
+	 * of circle fixtures, with exact shadows also beside every crossing of
+	 * fixture edges with the light circle, so the visibility polygon
+	 * corners are exact. Evenly distributed rays of {@link #lodRayNum} are
+	 * kept to shape the lit arcs.
+	 */
+	protected void updateAimedRays() {
+		localOccluders.clear();
+		rayHandler.world.QueryAABB(localOccludersCallback,
+				start.x - distance, start.y - distance,
+				start.x + distance, start.y + distance);
+		if (exactRays) localOccluders.buildNodes();
+
+		final float halfArc = getArcHalfAngle() * MathUtils.degreesToRadians;
+		final float arcStart = direction * MathUtils.degreesToRadians - halfArc;
+		final float arc = halfArc * 2f;
+
+		rayAngles.clear();
+		for (int i = 0; i < lodRayNum; i++) {
+			rayAngles.add(arcStart + arc * i / (lodRayNum - 1f));
+		}
+
+		final OccluderTree tree = localOccluders;
+		final float[] data = tree.primData.items;
+		final int[] info = tree.primInfo.items;
+		for (int prim = 0; prim < tree.primCount; prim++) {
+			if (!tree.accepts(this, info[prim * 2 + 1])) continue;
+
+			final int p = prim * 4;
+			if (info[prim * 2] == OccluderTree.CIRCLE) {
+				final float dx = data[p] - start.x;
+				final float dy = data[p + 1] - start.y;
+				final float r = data[p + 2];
+				final float dst = (float) Math.sqrt(dx * dx + dy * dy);
+				if (dst <= r || dst - r >= distance) continue;
+
+				final float angle = (float) Math.atan2(dy, dx);
+				final float tangent = (float) Math.asin(r / dst);
+				addRayAngle(angle - tangent - EXACT_RAY_OFFSET, arcStart, arc);
+				addRayAngle(angle + tangent + EXACT_RAY_OFFSET, arcStart, arc);
+			} else {
+				addVertexRayAngles(data[p], data[p + 1], arcStart, arc);
+				addVertexRayAngles(data[p + 2], data[p + 3], arcStart, arc);
+				if (exactRays) {
+					addCrossingRayAngles(data[p], data[p + 1],
+							data[p + 2], data[p + 3], arcStart, arc);
+				}
+			}
+		}
+
+		setRayAngles();
+	}
+
+	/**
+	 * Adds rays aimed just beside given vertex if it's in reach
+	 */
+	protected void addVertexRayAngles(float x, float y,
+			float arcStart, float arc) {
+		final float dx = x - start.x;
+		final float dy = y - start.y;
+		if (dx * dx + dy * dy >= distance * distance) return;
+
+		final float angle = (float) Math.atan2(dy, dx);
+		addRayAngle(angle - EXACT_RAY_OFFSET, arcStart, arc);
+		addRayAngle(angle + EXACT_RAY_OFFSET, arcStart, arc);
+	}
+
+	/**
+	 * Adds rays aimed just beside the crossings of given segment with this
+	 * light circle
+	 */
+	protected void addCrossingRayAngles(float x1, float y1, float x2,
+			float y2, float arcStart, float arc) {
+		final float ex = x2 - x1;
+		final float ey = y2 - y1;
+		final float wx = x1 - start.x;
+		final float wy = y1 - start.y;
+		final float a = ex * ex + ey * ey;
+		final float b = wx * ex + wy * ey;
+		final float c = wx * wx + wy * wy - distance * distance;
+		final float disc = b * b - a * c;
+		if (a == 0f || disc < 0f) return;
+
+		final float root = (float) Math.sqrt(disc);
+		for (int k = -1; k <= 1; k += 2) {
+			final float t = (-b + k * root) / a;
+			if (t < 0f || t > 1f) continue;
+
+			final float angle = (float) Math.atan2(wy + ey * t, wx + ex * t);
+			addRayAngle(angle - EXACT_RAY_OFFSET, arcStart, arc);
+			addRayAngle(angle + EXACT_RAY_OFFSET, arcStart, arc);
+		}
+	}
+
+	/**
+	 * Adds ray angle in radians if it's within this light arc
+	 */
+	protected void addRayAngle(float angle, float arcStart, float arc) {
+		float offset = (angle - arcStart) % MathUtils.PI2;
+		if (offset < 0f) offset += MathUtils.PI2;
+		if (offset > arc) return;
+		rayAngles.add(arcStart + offset);
+	}
+
+	/**
+	 * Sorts {@link #rayAngles} and sets rays directions from them
+	 */
+	protected void setRayAngles() {
+		rayAngles.sort();
+		final float[] angles = rayAngles.items;
+		int count = 0;
+		for (int i = 0; i < rayAngles.size; i++) {
+			if (count > 0 && angles[i] - angles[count - 1] < 0.000001f)
+				continue;
+			angles[count++] = angles[i];
+		}
+		rayAngles.size = count;
+
+		ensureRayCapacity(count);
+		rayNum = count;
+		vertexNum = count + 1;
+		for (int i = 0; i < count; i++) {
+			final float c = cos[i] = (float) Math.cos(angles[i]);
+			final float s = sin[i] = (float) Math.sin(angles[i]);
+			endX[i] = distance * c;
+			endY[i] = distance * s;
+		}
+	}
+
+	/**
+	 * Grows rays arrays and meshes to hold at least given number of rays
+	 */
+	protected void ensureRayCapacity(int rays) {
+		if (rays <= sin.length) return;
+
+		rays = Math.max(rays, sin.length * 2);
+		sin = new float[rays];
+		cos = new float[rays];
+		endX = new float[rays];
+		endY = new float[rays];
+		mx = new float[rays + 1];
+		my = new float[rays + 1];
+		f = new float[rays + 1];
+		segments = new float[(rays + 1) * 8];
+		createMeshes(rays + 1);
+	}
+
+	/**
+	 * @return if this light uses exact shadows
+	 * 
+	 * @see #setExactShadows(boolean)
+	 */
+	public boolean isExactShadows() {
+		return exactShadows;
+	}
+
+	/**
+	 * Enables/disables exact shadows
+	 * 
+	 * <p>Instead of evenly distributed rays, the rays are aimed beside
+	 * corners of the fixtures in reach, so the shadow corners are crisp
+	 * with far less rays. Rays number set for this light is then only used
+	 * for the lit arcs of the light circle.
+	 * 
+	 * <p>Fixtures geometry in reach is copied on every update, so this fits
+	 * lights with few fixtures around and static lights best.
+	 */
+	public void setExactShadows(boolean exactShadows) {
+		this.exactShadows = exactShadows;
+		dirty = true;
+	}
+
+	/**
+	 * @return if this light aims rays at the fixture vertices
+	 * 
+	 * @see #setAdaptiveRays(boolean)
+	 */
+	public boolean isAdaptiveRays() {
+		return adaptiveRays;
+	}
+
+	/**
+	 * Enables/disables adaptive rays distribution
+	 * 
+	 * <p>On top of the evenly distributed rays, two rays are aimed just
+	 * beside every vertex of the fixtures in reach, so shadow corners stay
+	 * sharp with low rays number. Rays are cast against the world as usual.
+	 * 
+	 * <p>Exact shadows take precedence if both are enabled.
+	 */
+	public void setAdaptiveRays(boolean adaptiveRays) {
+		this.adaptiveRays = adaptiveRays;
+		dirty = true;
+	}
+
+	@Override
+	void getRayBounds(Rectangle bounds) {
+		bounds.set(start.x - distance, start.y - distance,
+				distance * 2f, distance * 2f);
 	}
 
 	protected void prepareFixtureData() {
@@ -260,18 +900,30 @@ public abstract class PositionalLight extends Light {
 				start.x + distance, start.y + distance);
 	}
 
+	@Override
 	protected void setMesh() {
+		localMesh = false;
+		buildMesh(0f, 0f);
+	}
+
+	/**
+	 * Builds light meshes with vertices relative to given origin
+	 */
+	void buildMesh(float originX, float originY) {
+		if (rayHandler.headless) return;
+
+		final float colorF = getMeshColorF();
 		// ray starting point
 		int size = 0;
 
-		segments[size++] = start.x;
-		segments[size++] = start.y;
+		segments[size++] = start.x - originX;
+		segments[size++] = start.y - originY;
 		segments[size++] = colorF;
 		segments[size++] = 1;
 		// rays ending points.
 		for (int i = 0; i < rayNum; i++) {
-			segments[size++] = mx[i];
-			segments[size++] = my[i];
+			segments[size++] = mx[i] - originX;
+			segments[size++] = my[i] - originY;
 			segments[size++] = colorF;
 			segments[size++] = 1 - f[i];
 		}
@@ -282,13 +934,15 @@ public abstract class PositionalLight extends Light {
 		size = 0;
 		// rays ending points.
 		for (int i = 0; i < rayNum; i++) {
-			segments[size++] = mx[i];
-			segments[size++] = my[i];
+			final float x = mx[i] - originX;
+			final float y = my[i] - originY;
+			segments[size++] = x;
+			segments[size++] = y;
 			segments[size++] = colorF;
 			final float s = (1 - f[i]);
 			segments[size++] = s;
-			segments[size++] = mx[i] + s * softShadowLength * cos[i];
-			segments[size++] = my[i] + s * softShadowLength * sin[i];
+			segments[size++] = x + s * softShadowLength * cos[i];
+			segments[size++] = y + s * softShadowLength * sin[i];
 			segments[size++] = zeroColorBits;
 			segments[size++] = 0f;
 		}
@@ -296,11 +950,11 @@ public abstract class PositionalLight extends Light {
 	}
 
 	protected void updateDynamicShadowMeshes() {
-		int meshInd = 0;
+		dynamicShadowVertices.clear();
 		float colBits = rayHandler.ambientLight.toFloatBits();
 		for (Fixture fixture : affectedFixtures) {
-			LightData data = (LightData)fixture.getUserData();
-			if (data == null || fixture.isSensor()) continue;
+			LightData data = getLightData(fixture);
+			if (data == null || isSensor(fixture)) continue;
 
 			int size = 0;
 			float l;
@@ -331,7 +985,7 @@ public abstract class PositionalLight extends Light {
 						cShape.getVertex(n, tmpVec);
 					}
 					tmpVec.set(body.getWorldPoint(tmpVec));
-					tmpVerts.add(tmpVec.cpy());
+					tmpVerts.add(tmpVec.x, tmpVec.y);
 					tmpEnd.set(tmpVec).sub(start).limit2(0.0001f).add(tmpVec);
 					if (fixture.testPoint(tmpEnd)) {
 						if (minN == -1) minN = n;
@@ -349,7 +1003,7 @@ public abstract class PositionalLight extends Light {
 
 				ind.clear();
 				if (!hasGasp) {
-					tmpVec.set(tmpVerts.get(minDstN));
+					tmpVec.set(tmpVerts.get(minDstN * 2), tmpVerts.get(minDstN * 2 + 1));
 					for (int n = minDstN; n < vertexCount; n++) {
 						ind.add(n);
 					}
@@ -374,8 +1028,9 @@ public abstract class PositionalLight extends Light {
 				}
 
 				boolean contained = false;
-				for (int n : ind.toArray()) {
-					tmpVec.set(tmpVerts.get(n));
+				for (int i = 0; i < ind.size; i++) {
+					final int n = ind.get(i);
+					tmpVec.set(tmpVerts.get(n * 2), tmpVerts.get(n * 2 + 1));
 					if (contains(tmpVec.x, tmpVec.y)){
 						contained = true;
 						break;
@@ -385,8 +1040,9 @@ public abstract class PositionalLight extends Light {
 				if (!contained)
 					continue;
 
-				for (int n : ind.toArray()) {
-					tmpVec.set(tmpVerts.get(n));
+				for (int i = 0; i < ind.size; i++) {
+					final int n = ind.get(i);
+					tmpVec.set(tmpVerts.get(n * 2), tmpVerts.get(n * 2 + 1));
 
 					float dst = tmpVec.dst(start);
 					l = data.getLimit(dst, pseudo3dHeight, distance);
@@ -518,21 +1174,8 @@ public abstract class PositionalLight extends Light {
 				segments[size++] = f2;
 			}
 
-			Mesh mesh = null;
-			if (meshInd >= dynamicShadowMeshes.size) {
-				mesh = new Mesh(
-						Mesh.VertexDataType.VertexArray, false, RayHandler.MAX_SHADOW_VERTICES, 0,
-						new VertexAttribute(VertexAttributes.Usage.Position, 2, "vertex_positions"),
-						new VertexAttribute(VertexAttributes.Usage.ColorPacked, 4, "quad_colors"),
-						new VertexAttribute(VertexAttributes.Usage.Generic, 1, "s"));
-				dynamicShadowMeshes.add(mesh);
-			} else {
-				mesh = dynamicShadowMeshes.get(meshInd);
-			}
-			mesh.setVertices(segments, 0, size);
-			meshInd++;
+			addStrip(dynamicShadowVertices, segments, size);
 		}
-		dynamicShadowMeshes.truncate(meshInd);
 	}
 
 	public float getBodyOffsetX() {
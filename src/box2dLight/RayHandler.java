@@ -5,15 +5,31 @@ import shaders.LightShader;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
+import com.badlogic.gdx.graphics.Mesh.VertexDataType;
 import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
 import com.badlogic.gdx.graphics.glutils.FrameBuffer;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.QueryCallback;
 import com.badlogic.gdx.physics.box2d.World;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.badlogic.gdx.utils.async.AsyncTask;
+
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * Handler that manages everything related to lights updating and rendering
@@ -97,8 +113,11 @@ public class RayHandler implements Disposable {
 	boolean customViewport = false;
 	int viewportX = 0;
 	int viewportY = 0;
-	int viewportWidth = Gdx.graphics.getWidth();
-	int viewportHeight = Gdx.graphics.getHeight();
+	int viewportWidth = Gdx.graphics != null ? Gdx.graphics.getWidth() : 0;
+	int viewportHeight = Gdx.graphics != null ? Gdx.graphics.getHeight() : 0;
+
+	/** If no GL resources are allocated and rendering is not available **/
+	final boolean headless;
 	
 	/** How many lights passed culling and rendered to scene last time */
 	int lightRenderedLastFrame = 0;
@@ -107,6 +126,87 @@ public class RayHandler implements Disposable {
 	float x1, x2, y1, y2;
 
 	World world;
+
+	/** Parallel update variables **/
+	AsyncExecutor executor;
+	int updateThreads = 1;
+	boolean updatingInParallel = false;
+	final OccluderTree occluders = new OccluderTree();
+	final Array<Light> queuedLights = new Array<Light>(false, 16);
+	final Array<RayCastingTask> rayCastingTasks = new Array<RayCastingTask>();
+	final Array<AsyncResult<Void>> rayCastingResults =
+			new Array<AsyncResult<Void>>();
+
+	/** Number of the update, grows on each update and rays invalidation **/
+	int updateFrame = 0;
+
+	/** Journal of the bodies changed since last update, if enabled **/
+	BodyJournal bodyJournal;
+	boolean incrementalRayCasting = false;
+	boolean semiStaticLights = false;
+	boolean skipSettledLights = false;
+
+	/** Pseudo 3d shadows of all lights batched into a triangle strip **/
+	final FloatArray shadowVertices = new FloatArray();
+	Mesh shadowMesh;
+
+	/** Fixture properties cache, if enabled **/
+	FixtureCache fixtureCache;
+
+	/** Static light layer variables **/
+	boolean staticLightLayer = false;
+	boolean staticLayerDirty = true;
+	int staticLightsRendered = 0;
+	boolean staticLayerBlur;
+	int staticLayerBlurNum;
+	final Matrix4 staticLayerCombined = new Matrix4();
+
+	/** Grid of the lights bounds, if enabled **/
+	LightGrid lightGrid;
+	final Array<Light> visibleLights = new Array<Light>(false, 16);
+
+	/** Grid of the light levels over the visible area, if enabled **/
+	IlluminationGrid illuminationGrid;
+	final Color tmpColor = new Color();
+
+	/** Tracker of the points entering and exiting lights, if enabled **/
+	LightTracker lightTracker;
+
+	/** Lights meshes may be only moved if nothing can occlude them **/
+	boolean transformOnlyUpdates = false;
+	final Matrix4 lightTransform = new Matrix4();
+
+	/** Batch of all lights meshes, if enabled **/
+	LightBatch lightBatch;
+
+	/** Instanced renderer of the x-ray point and cone lights, if enabled **/
+	LightInstances lightInstances;
+
+	/** Screen pixels per ray for rays level of detail, 0 if disabled **/
+	float pixelsPerRay = 0f;
+
+	/** Ray budget variables **/
+	int rayBudget = 0;
+	final Array<Light> budgetLights = new Array<Light>(false, 16);
+	final Comparator<Light> priorityComparator = new Comparator<Light>() {
+		@Override
+		public int compare(Light a, Light b) {
+			return Float.compare(b.priority, a.priority);
+		}
+	};
+
+	/** Static occluders variables **/
+	OccluderTree staticOccluders;
+	boolean staticOccludersDirty = true;
+	boolean nonStaticOccluderFound = false;
+	final Rectangle tmpBounds = new Rectangle();
+	final QueryCallback nonStaticOccluderCallback = new QueryCallback() {
+		@Override
+		public boolean reportFixture(Fixture fixture) {
+			nonStaticOccluderFound = !staticOccluders.contains(fixture);
+			return !nonStaticOccluderFound;
+		}
+	};
 	
 	/**
 	 * Class constructor specifying the physics world from where collision
@@ -132,8 +232,12 @@ public class RayHandler implements Disposable {
 	}
 
 	public RayHandler(World world, RayHandlerOptions options) {
-		this(world, Gdx.graphics.getWidth() / 4, Gdx.graphics
-				.getHeight() / 4, options);
+		this(world,
+				options != null && options.headless ?
+						0 : Gdx.graphics.getWidth() / 4,
+				options != null && options.headless ?
+						0 : Gdx.graphics.getHeight() / 4,
+				options);
 	}
 
 	/**
@@ -155,6 +259,12 @@ public class RayHandler implements Disposable {
 			pseudo3d = options.pseudo3d;
 			shadowColorInterpolation = options.shadowColorInterpolation;
 		}
+		headless = options != null && options.headless;
+
+		if (headless) {
+			lightShader = null;
+			return;
+		}
 
 		resizeFBO(fboWidth, fboHeight);
 		lightShader = LightShader.createLightShader();
@@ -162,12 +272,17 @@ public class RayHandler implements Disposable {
 
 	/**
 	 * Resize the FBO used for intermediate rendering.
+	 * 
+	 * <p>Ignored in headless mode
 	 */
 	public void resizeFBO(int fboWidth, int fboHeight) {
+		if (headless) return;
+
 		if (lightMap != null) {
 			lightMap.dispose();
 		}
 		lightMap = new LightMap(this, fboWidth, fboHeight);
+		staticLayerDirty = true;
 	}
 	
 	/**
@@ -306,8 +421,231 @@ public class RayHandler implements Disposable {
 	 * @see #render()
 	 */
 	public void update() {
+		updateFrame++;
+		// more entries than fixtures, some of them were destroyed
+		if (fixtureCache != null && world != null &&
+				fixtureCache.entries.size > world.getFixtureCount()) {
+			fixtureCache.prune();
+		}
+		if (bodyJournal != null && world != null) {
+			bodyJournal.update(world);
+			if (semiStaticLights) invalidateSemiStaticLights();
+		}
+		if (rayBudget > 0) scheduleRayCasting();
+
+		if (executor != null && world != null) {
+			updateInParallel();
+		} else {
+			for (Light light : lightList) {
+				light.update();
+			}
+		}
+
+		if (lightGrid != null) {
+			for (Light light : lightList) {
+				lightGrid.update(light);
+			}
+		}
+		if (illuminationGrid != null) illuminationGrid.update();
+		if (lightTracker != null) lightTracker.update();
+	}
+
+	/**
+	 * Marks semi-static lights overlapping bodies changed since last update
+	 * dirty
+	 */
+	void invalidateSemiStaticLights() {
 		for (Light light : lightList) {
-			light.update();
+			if (!light.semiStatic || light.dirty) continue;
+
+			light.getRayBounds(tmpBounds);
+			if (bodyJournal.overlapsBounds(tmpBounds.x, tmpBounds.y,
+					tmpBounds.x + tmpBounds.width,
+					tmpBounds.y + tmpBounds.height)) {
+				light.dirty = true;
+			} else if (light.castFrame == updateFrame - 1) {
+				// rays are still valid, keep them for incremental ray casting
+				light.castFrame = updateFrame;
+			}
+		}
+	}
+
+	/**
+	 * Uploads pseudo 3d shadows of all lights to the streaming shadow mesh,
+	 * growing it if needed, and renders them with a single draw call
+	 */
+	void renderShadowBatch() {
+		final int vertices = shadowVertices.size / 4;
+		if (vertices == 0) return;
+
+		if (shadowMesh == null || shadowMesh.getMaxVertices() < vertices) {
+			int capacity = shadowMesh == null ?
+					MAX_SHADOW_VERTICES : shadowMesh.getMaxVertices();
+			while (capacity < vertices) capacity *= 2;
+			if (shadowMesh != null) shadowMesh.dispose();
+			shadowMesh = new Mesh(
+					VertexDataType.VertexBufferObject, false, capacity, 0,
+					new VertexAttribute(Usage.Position, 2, "vertex_positions"),
+					new VertexAttribute(Usage.ColorPacked, 4, "quad_colors"),
+					new VertexAttribute(Usage.Generic, 1, "s"));
+		}
+		shadowMesh.setVertices(shadowVertices.items, 0, shadowVertices.size);
+		shadowMesh.render(lightShader, GL20.GL_TRIANGLE_STRIP, 0, vertices);
+	}
+
+	/**
+	 * Picks lights to cast their rays in this update within the ray budget,
+	 * by their priority, all others are deferred and keep their meshes
+	 */
+	void scheduleRayCasting() {
+		budgetLights.clear();
+		for (Light light : lightList) {
+			light.deferred = false;
+			if (light.staticLight && !light.dirty) continue;
+
+			light.getRayBounds(tmpBounds);
+			final float radius =
+					Math.max(tmpBounds.width, tmpBounds.height) * 0.5f;
+			final float x = tmpBounds.x + tmpBounds.width * 0.5f;
+			final float y = tmpBounds.y + tmpBounds.height * 0.5f;
+			if (culling && !intersect(x, y, radius)) continue;
+
+			light.priority = getRayPriority(light, x, y, radius);
+			budgetLights.add(light);
+		}
+		budgetLights.sort(priorityComparator);
+
+		int rays = 0;
+		for (int i = 0; i < budgetLights.size; i++) {
+			final Light light = budgetLights.get(i);
+			if (i == 0 || rays + light.rayNum <= rayBudget) {
+				rays += light.rayNum;
+			} else {
+				light.deferred = true;
+			}
+		}
+		budgetLights.clear();
+	}
+
+	/**
+	 * @return ray casting priority of the light with given bounding circle,
+	 * grows with its screen size, closeness to the camera center and number
+	 * of updates since it was last refreshed or found settled
+	 */
+	float getRayPriority(Light light, float x, float y, float radius) {
+		if (light.refreshFrame < 0) return Float.MAX_VALUE;
+
+		final int validFrame = Math.max(light.refreshFrame, light.castFrame);
+
+		final float viewSize = Math.max(Math.max(x2 - x1, y2 - y1), 0.0001f);
+		final float dx = x - (x1 + x2) * 0.5f;
+		final float dy = y - (y1 + y2) * 0.5f;
+		final float size = radius * 2f / viewSize;
+		final float closeness =
+				1f / (1f + (float) Math.sqrt(dx * dx + dy * dy) / viewSize);
+		return size * closeness * (updateFrame - validFrame);
+	}
+
+	/**
+	 * Updates lights with ray casting spread over the worker threads
+	 * 
+	 * <p>Fixtures geometry is copied to {@link #occluders} first, then
+	 * lights are updated as usual except their ray casting is queued.
+	 * Queued lights cast their rays against the snapshot on worker threads
+	 * and their meshes are uploaded back on this thread.
+	 */
+	void updateInParallel() {
+		if (staticOccluders != null) updateStaticOccluders();
+		occluders.build(world, staticOccluders);
+		queuedLights.clear();
+
+		updatingInParallel = true;
+		try {
+			for (Light light : lightList) {
+				light.update();
+			}
+
+			final int lightCount = queuedLights.size;
+			final int taskCount = Math.min(updateThreads, lightCount);
+			rayCastingResults.clear();
+			for (int i = 0; i < taskCount; i++) {
+				if (i >= rayCastingTasks.size) {
+					rayCastingTasks.add(new RayCastingTask());
+				}
+				RayCastingTask task = rayCastingTasks.get(i);
+				task.from = lightCount * i / taskCount;
+				task.to = lightCount * (i + 1) / taskCount;
+				// last chunk is processed on this thread
+				if (i < taskCount - 1) {
+					rayCastingResults.add(executor.submit(task));
+				} else {
+					task.call();
+				}
+			}
+			for (AsyncResult<Void> result : rayCastingResults) {
+				result.get();
+			}
+		} finally {
+			updatingInParallel = false;
+			rayCastingResults.clear();
+		}
+
+		for (Light light : queuedLights) {
+			light.setMesh();
+		}
+		queuedLights.clear();
+	}
+
+	/**
+	 * Queues ray casting of the light while in parallel update
+	 * 
+	 * @return if the light was queued, {@code false} if it should cast its
+	 * rays right away
+	 */
+	boolean queueRayCasting(Light light) {
+		if (!updatingInParallel) return false;
+
+		queuedLights.add(light);
+		return true;
+	}
+
+	/**
+	 * Checks if the light rays need to be cast against the physics world,
+	 * which is not needed if all the fixtures in their reach are already in
+	 * the static occluders tree
+	 */
+	boolean needsWorldRayCasting(Light light) {
+		if (staticOccluders == null) return true;
+
+		updateStaticOccluders();
+		light.getRayBounds(tmpBounds);
+		nonStaticOccluderFound = false;
+		world.QueryAABB(nonStaticOccluderCallback,
+				tmpBounds.x, tmpBounds.y,
+				tmpBounds.x + tmpBounds.width,
+				tmpBounds.y + tmpBounds.height);
+		return nonStaticOccluderFound;
+	}
+
+	/** Rebuilds static occluders tree if it was invalidated **/
+	void updateStaticOccluders() {
+		if (!staticOccludersDirty || world == null) return;
+
+		staticOccluders.buildStatic(world);
+		staticOccludersDirty = false;
+	}
+
+	/** Casts rays of a range of queued lights **/
+	class RayCastingTask implements AsyncTask<Void> {
+		int from;
+		int to;
+
+		@Override
+		public Void call() {
+			for (int i = from; i < to; i++) {
+				queuedLights.get(i).castRays();
+			}
+			return null;
 		}
 	}
 
@@ -324,31 +662,22 @@ public class RayHandler implements Disposable {
 	 */
 	public void prepareRender() {
 		lightRenderedLastFrame = 0;
+		if (headless) return;
 
 		Gdx.gl.glDepthMask(false);
 		Gdx.gl.glEnable(GL20.GL_BLEND);
 
 		boolean useLightMap = (shadows || blur);
+		boolean useStaticLayer = useLightMap && staticLightLayer && !pseudo3d;
+		if (useStaticLayer) renderStaticLayer();
+
 		if (useLightMap) {
 			lightMap.frameBuffer.begin();
 			Gdx.gl.glClearColor(0f, 0f, 0f, 0f);
 			Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 		}
 
-		simpleBlendFunc.apply();
-
-		ShaderProgram shader = customLightShader != null ? customLightShader : lightShader;
-		shader.bind();
-		{
-			lightShader.setUniformMatrix("u_projTrans", combined);
-			shader.setUniformMatrix("u_projTrans", combined);
-			if (customLightShader != null) updateLightShader();
-
-			for (Light light : lightList) {
-				if (customLightShader != null) updateLightShaderPerLight(light);
-				light.render();
-			}
-		}
+		renderLights(useStaticLayer, false);
 
 		if (useLightMap) {
 			if (customViewport) {
@@ -367,9 +696,11 @@ public class RayHandler implements Disposable {
 			Gdx.gl.glClearColor(0f, 0f, 0f, 0f);
 			Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
+			shadowVertices.clear();
 			for (Light light : lightList) {
 				light.dynamicShadowRender();
 			}
+			renderShadowBatch();
 
 			if (customViewport) {
 				lightMap.shadowBuffer.end(
@@ -388,6 +719,110 @@ public class RayHandler implements Disposable {
 			lightMap.gaussianBlur(lightMap.frameBuffer, blurNum);
 		if (needed && blur && pseudo3d)
 			lightMap.gaussianBlur(lightMap.shadowBuffer, blurNum);
+
+		if (useStaticLayer && staticLightsRendered > 0) {
+			lightMap.addStaticLayer();
+			lightRenderedLastFrame += staticLightsRendered;
+		}
+	}
+
+	/**
+	 * Renders lights with the light shader
+	 * 
+	 * @param useStaticLayer - if static lights are rendered to the static
+	 *                         layer separately
+	 * @param staticLayer - if static lights should be rendered, dynamic
+	 *                      otherwise, used only with the static layer
+	 */
+	void renderLights(boolean useStaticLayer, boolean staticLayer) {
+		simpleBlendFunc.apply();
+
+		ShaderProgram shader = customLightShader != null ? customLightShader : lightShader;
+		shader.bind();
+		{
+			lightShader.setUniformMatrix("u_projTrans", combined);
+			shader.setUniformMatrix("u_projTrans", combined);
+			if (customLightShader != null) updateLightShader();
+
+			final Array<Light> lights = getVisibleLights();
+			if (lightBatch != null && customLightShader == null) {
+				lightBatch.begin(lightShader);
+				for (Light light : lights) {
+					if (useStaticLayer && light.staticLight != staticLayer) continue;
+					light.batch(lightBatch);
+				}
+				lightBatch.end();
+			} else {
+				for (Light light : lights) {
+					if (useStaticLayer && light.staticLight != staticLayer) continue;
+					if (customLightShader != null) {
+						updateLightShaderPerLight(light);
+					} else {
+						lightShader.setUniformf("u_lightColor", light.color);
+					}
+					light.render();
+				}
+				if (customLightShader == null) {
+					lightShader.setUniformf("u_lightColor", Color.WHITE);
+				}
+			}
+
+			if (lightInstances != null && lightInstances.instances.size > 0) {
+				lightInstances.render(combined);
+				shader.bind();
+			}
+		}
+	}
+
+	/**
+	 * @return lights near the camera found in the light grid, or all the
+	 * lights if the grid is disabled or wouldn't help
+	 */
+	Array<Light> getVisibleLights() {
+		if (lightGrid == null || !culling) return lightList;
+
+		visibleLights.clear();
+		if (!lightGrid.query(x1, y1, x2, y2, lightList.size, visibleLights)) {
+			return lightList;
+		}
+		return visibleLights;
+	}
+
+	/**
+	 * Renders and blurs static lights to the static layer if any of them
+	 * changed or the camera moved since last time
+	 */
+	void renderStaticLayer() {
+		if (!staticLayerDirty && staticLayerBlur == blur &&
+				staticLayerBlurNum == blurNum &&
+				Arrays.equals(staticLayerCombined.val, combined.val)) return;
+
+		final FrameBuffer buffer = lightMap.getStaticBuffer();
+		buffer.begin();
+		Gdx.gl.glClearColor(0f, 0f, 0f, 0f);
+		Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
+
+		renderLights(true, true);
+
+		if (customViewport) {
+			buffer.end(
+				viewportX,
+				viewportY,
+				viewportWidth,
+				viewportHeight);
+		} else {
+			buffer.end();
+		}
+
+		staticLightsRendered = lightRenderedLastFrame;
+		lightRenderedLastFrame = 0;
+		if (staticLightsRendered > 0 && blur)
+			lightMap.gaussianBlur(buffer, blurNum);
+
+		staticLayerDirty = false;
+		staticLayerBlur = blur;
+		staticLayerBlurNum = blurNum;
+		staticLayerCombined.set(combined);
 	}
 
 	/**
@@ -407,6 +842,8 @@ public class RayHandler implements Disposable {
 	 * @see #setCombinedMatrix(Matrix4, float, float, float, float)
 	 */
 	public void render() {
+		if (headless) return;
+
 		prepareRender();
 		lightMap.render();
 	}
@@ -423,6 +860,8 @@ public class RayHandler implements Disposable {
 	 * @see #prepareRender()
 	 */
 	public void renderOnly() {
+		if (headless) return;
+
 		lightMap.render();
 	}
 
@@ -450,24 +889,119 @@ public class RayHandler implements Disposable {
 	 * @return true if point is inside of any light volume
 	 */
 	public boolean pointAtLight(float x, float y) {
+		if (lightGrid != null) return lightGrid.pointAtLight(x, y);
+
 		for (Light light : lightList) {
 			if (light.contains(x, y)) return true;
 		}
 		return false;
 	}
 
+	/**
+	 * Checks which of the given points are inside of any light volume
+	 * 
+	 * @param out - set to {@code true} for points inside of any light
+	 *              volume, {@code false} for others
+	 */
+	public void pointAtLight(float[] xs, float[] ys, boolean[] out) {
+		for (int i = 0; i < xs.length; i++) {
+			out[i] = pointAtLight(xs[i], ys[i]);
+		}
+	}
+
 	/**
 	 * Checks whether the given point is outside of all light volumes
 	 * 
 	 * @return true if point is NOT inside of any light volume
 	 */
 	public boolean pointAtShadow(float x, float y) {
+		if (lightGrid != null) return !lightGrid.pointAtLight(x, y);
+
 		for (Light light : lightList) {
 			if (light.contains(x, y)) return false;
 		}
 		return true;
 	}
 
+	/**
+	 * Sets the color to the light map color all lights render at given
+	 * point, without the ambient light and soft shadows
+	 * 
+	 * <p>Light shader falloff is approximated by
+	 * {@link Light#getIntensity(float, float)}, lights are summed with the
+	 * light map blending and the result saturates at 1.
+	 * 
+	 * <p>Points in the visible area are read from the illumination grid,
+	 * if enabled, so in constant time. Others are computed from the lights.
+	 * 
+	 * @return the color for chaining
+	 * 
+	 * @see #setIlluminationGrid(float)
+	 */
+	public Color getIllumination(float x, float y, Color color) {
+		if (illuminationGrid != null) {
+			return illuminationGrid.getIllumination(x, y, color);
+		}
+		return IlluminationGrid.sample(lightList, x, y, color);
+	}
+
+	/**
+	 * @return light level at given point, the light map alpha from 0 in the
+	 * shadow to 1 for fully lit points
+	 * 
+	 * @see #getIllumination(float, float, Color)
+	 */
+	public float getLightLevel(float x, float y) {
+		return getIllumination(x, y, tmpColor).a;
+	}
+
+	/**
+	 * Starts tracking given point, its light enter and exit events are
+	 * raised from next update
+	 * 
+	 * @return the tracked point, to be moved with
+	 *         {@link TrackedPoint#setPosition(float, float)}
+	 * 
+	 * @see #setLightTracking(float, LightListener)
+	 */
+	public TrackedPoint track(float x, float y) {
+		return track(new TrackedPoint(x, y, null));
+	}
+
+	/**
+	 * Starts tracking the body position, its light enter and exit events
+	 * are raised from next update
+	 * 
+	 * <p>Points of the bodies destroyed since last update are untracked on
+	 * update, with exit events of their lights. The world reuses destroyed
+	 * body objects, so a body destroyed and another created before the
+	 * next update is not detected, untrack the point before
+	 * {@link World#destroyBody(Body)} in that case.
+	 * 
+	 * @return the tracked point, following the body
+	 * 
+	 * @see #setLightTracking(float, LightListener)
+	 */
+	public TrackedPoint track(Body body) {
+		return track(new TrackedPoint(body.getPosition().x,
+				body.getPosition().y, body));
+	}
+
+	TrackedPoint track(TrackedPoint point) {
+		if (lightTracker == null) {
+			throw new GdxRuntimeException("Light tracking is not enabled");
+		}
+		lightTracker.add(point);
+		return point;
+	}
+
+	/**
+	 * Stops tracking the point, no exit events are raised for it
+	 */
+	public void untrack(TrackedPoint point) {
+		if (lightTracker != null) lightTracker.remove(point);
+	}
+
 	/**
 	 * Disposes all this rayHandler lights and resources
 	 */
@@ -475,12 +1009,23 @@ public class RayHandler implements Disposable {
 		removeAll();
 		if (lightMap != null) lightMap.dispose();
 		if (lightShader != null) lightShader.dispose();
+		if (executor != null) executor.dispose();
+		executor = null;
+		if (shadowMesh != null) shadowMesh.dispose();
+		shadowMesh = null;
+		if (lightBatch != null) lightBatch.dispose();
+		lightBatch = null;
+		if (lightInstances != null) lightInstances.dispose();
+		lightInstances = null;
 	}
 
 	/**
 	 * Removes and disposes both all active and disabled lights
 	 */
 	public void removeAll() {
+		if (lightGrid != null) lightGrid.clear();
+		if (illuminationGrid != null) illuminationGrid.clear();
+		if (lightTracker != null) lightTracker.clearLights();
 		for (Light light : lightList) {
 			light.dispose();
 		}
@@ -496,9 +1041,25 @@ public class RayHandler implements Disposable {
 	 * Set custom light shader, null to reset to default
 	 *
 	 * Changes will take effect next time #render() is called
+	 *
+	 * <p>Custom shaders get the light color in the vertex colors. If the
+	 * shader multiplies them by {@code uniform vec4 u_lightColor} like the
+	 * default one does, that uniform is set to white here.
 	 */
 	public void setLightShader (ShaderProgram customLightShader) {
 		this.customLightShader = customLightShader;
+		if (customLightShader != null &&
+				customLightShader.hasUniform("u_lightColor")) {
+			customLightShader.bind();
+			customLightShader.setUniformf("u_lightColor", Color.WHITE);
+		}
+		// static lights meshes carry the color only for custom shaders
+		for (Light light : lightList) {
+			if (light.staticLight) light.dirty = true;
+		}
+		for (Light light : disabledLights) {
+			if (light.staticLight) light.dirty = true;
+		}
 	}
 
 	/**
@@ -540,6 +1101,420 @@ public class RayHandler implements Disposable {
 		this.blurNum = blurNum;
 	}
 
+	/**
+	 * Sets number of threads used for lights ray casting.
+	 * 
+	 * <p>With more than 1 thread the fixtures geometry is copied to a
+	 * Java side snapshot on every {@link #update()} and ray casting of all
+	 * the lights is spread over the threads, one of them being the calling
+	 * thread. Meshes are still uploaded on the calling thread. This pays off
+	 * with many lights, as copying the snapshot costs about as much as
+	 * casting few rays per fixture vertex.
+	 * 
+	 * <p>Default = 1 (disabled)
+	 * 
+	 * @param threads
+	 *            number of threads, values below 2 disable parallel update
+	 */
+	public void setParallelUpdate(int threads) {
+		if (executor != null) {
+			executor.dispose();
+			executor = null;
+		}
+		updateThreads = Math.max(1, threads);
+		if (updateThreads > 1) {
+			executor = new AsyncExecutor(updateThreads - 1, "box2dLights");
+		}
+	}
+
+	/**
+	 * Enables/disables the static occluders tree.
+	 * 
+	 * <p>If enabled fixtures of static bodies are copied once to a Java side
+	 * bounding volume hierarchy and lights rays are tested against it
+	 * without going through JNI. The physics world is ray cast only for
+	 * lights that have non static fixtures in their reach.
+	 * 
+	 * <p>The copy is not updated automatically, call
+	 * {@link #invalidateStaticOccluders()} after static bodies are created,
+	 * destroyed, moved or their fixtures filter data changed.
+	 * 
+	 * <p>Default = false
+	 */
+	public void setStaticOccluders(boolean enabled) {
+		if (enabled && staticOccluders == null) {
+			staticOccluders = new OccluderTree();
+			staticOccludersDirty = true;
+		} else if (!enabled) {
+			staticOccluders = null;
+		}
+	}
+
+	/**
+	 * Marks the static occluders tree to be rebuilt before next ray casting
+	 * 
+	 * @see #setStaticOccluders(boolean)
+	 */
+	public void invalidateStaticOccluders() {
+		staticOccludersDirty = true;
+		invalidateRays();
+	}
+
+	/**
+	 * Enables/disables incremental ray casting.
+	 * 
+	 * <p>If enabled bodies are compared with their state from the previous
+	 * update and point and cone lights which did not move recast only the
+	 * rays crossing the old or new bounds of the changed bodies, reusing
+	 * the results of all other rays.
+	 * 
+	 * <p>Bodies moving, being created or destroyed and fixtures count
+	 * changes are detected, call {@link #invalidateRays()} after changing
+	 * fixtures filter data or light filters in place.
+	 * 
+	 * <p>Default = false
+	 */
+	public void setIncrementalRayCasting(boolean enabled) {
+		incrementalRayCasting = enabled;
+		updateBodyJournal();
+	}
+
+	/**
+	 * Creates the body journal if incremental ray casting or semi-static
+	 * lights need it, drops it otherwise
+	 */
+	void updateBodyJournal() {
+		final boolean needed = incrementalRayCasting || semiStaticLights;
+		if (needed && bodyJournal == null) {
+			bodyJournal = new BodyJournal();
+		} else if (!needed) {
+			bodyJournal = null;
+		}
+	}
+
+	/**
+	 * Makes all lights recast all their rays on next update
+	 * 
+	 * @see #setIncrementalRayCasting(boolean)
+	 */
+	public void invalidateRays() {
+		updateFrame++;
+	}
+
+	/**
+	 * Enables/disables the fixture cache.
+	 * 
+	 * <p>If enabled filter data, sensor flag, body and {@link LightData} of
+	 * the fixtures are read once and kept in a Java side cache, so the
+	 * lights ray casting and dynamic shadows callbacks don't go through JNI
+	 * for every reported fixture.
+	 * 
+	 * <p>Fixtures are refreshed when their body, shape or user data object
+	 * changes, so fixtures reused by the world after being destroyed are
+	 * read again, and entries of destroyed fixtures are evicted on update
+	 * once the cache holds more entries than the world fixtures. Call
+	 * {@link #invalidateFixture(Fixture)} after changing a fixture filter
+	 * data or sensor flag.
+	 * 
+	 * <p>Default = false
+	 */
+	public void setFixtureCache(boolean enabled) {
+		if (enabled && fixtureCache == null) {
+			fixtureCache = new FixtureCache();
+		} else if (!enabled) {
+			fixtureCache = null;
+		}
+	}
+
+	/**
+	 * Removes the fixture from the fixture cache
+	 * 
+	 * @see #setFixtureCache(boolean)
+	 */
+	public void invalidateFixture(Fixture fixture) {
+		if (fixtureCache != null) fixtureCache.invalidate(fixture);
+		invalidateRays();
+	}
+
+	/**
+	 * Clears the fixture cache
+	 * 
+	 * @see #setFixtureCache(boolean)
+	 */
+	public void invalidateFixtures() {
+		if (fixtureCache != null) fixtureCache.clear();
+		invalidateRays();
+	}
+
+	/**
+	 * Enables/disables the static light layer.
+	 * 
+	 * <p>If enabled static lights are rendered and blurred to a separate
+	 * frame buffer which is kept between frames, and only redrawn when a
+	 * static light changes or the combined matrix changes. Each frame only
+	 * dynamic lights are rendered and blurred, then the static layer is
+	 * added on top of them.
+	 * 
+	 * <p>Not used with pseudo 3d lights.
+	 * 
+	 * <p>Default = false
+	 */
+	public void setStaticLightLayer(boolean enabled) {
+		staticLightLayer = enabled;
+		staticLayerDirty = true;
+		if (!enabled && lightMap != null) lightMap.disposeStaticBuffer();
+	}
+
+	/**
+	 * Marks the static light layer to be redrawn on next render
+	 * 
+	 * @see #setStaticLightLayer(boolean)
+	 */
+	public void invalidateStaticLightLayer() {
+		staticLayerDirty = true;
+	}
+
+	/**
+	 * Enables/disables the light grid.
+	 * 
+	 * <p>If enabled bounds of the active lights are kept in a uniform grid
+	 * of given cell size in world units, refreshed on each update. Rendering
+	 * and {@link #pointAtLight(float, float)},
+	 * {@link #pointAtShadow(float, float)} then visit only the lights near
+	 * the camera or the point, instead of all of them.
+	 * 
+	 * <p>Lights added or moved since last update are not found by the
+	 * point queries until the next one.
+	 * 
+	 * @param cellSize - size of the grid cells, a few times the typical
+	 *                   light distance works well, 0 disables the grid
+	 * 
+	 * <p>Default = 0
+	 */
+	public void setLightGrid(float cellSize) {
+		if (lightGrid != null) lightGrid.clear();
+		lightGrid = null;
+		if (cellSize > 0f) {
+			lightGrid = new LightGrid(cellSize);
+			for (Light light : lightList) {
+				lightGrid.update(light);
+			}
+		}
+	}
+
+	/**
+	 * Enables/disables the illumination grid.
+	 * 
+	 * <p>If enabled the light accumulated by the lights is kept in a coarse
+	 * grid of given cell size in world units over the camera area, so
+	 * {@link #getIllumination(float, float, Color)} and
+	 * {@link #getLightLevel(float, float)} are answered in constant time.
+	 * On each update only the cells under the lights changed since the last
+	 * one are recomputed, all of them if the camera moved to other cells.
+	 * 
+	 * <p>Cells are sampled at their centers and soft shadows are not
+	 * accounted for.
+	 * 
+	 * @param cellSize - size of the grid cells, 0 disables the grid
+	 * 
+	 * <p>Default = 0
+	 */
+	public void setIlluminationGrid(float cellSize) {
+		if (illuminationGrid != null) illuminationGrid.clear();
+		illuminationGrid = null;
+		if (cellSize > 0f) {
+			illuminationGrid = new IlluminationGrid(this, cellSize);
+			illuminationGrid.update();
+		}
+	}
+
+	/**
+	 * Enables/disables tracking of the points entering and exiting lights.
+	 * 
+	 * <p>If enabled points added with {@link #track(float, float)} or
+	 * {@link #track(Body)} are kept in a uniform grid of given cell size in
+	 * world units. On each update only the points moved since the last one
+	 * and the points near the lights refreshed or moved since the last one
+	 * are checked against the lights, and the listener is notified of the
+	 * points which entered or exited them.
+	 * 
+	 * <p>Disabling forgets all tracked points, changing the cell size or
+	 * the listener keeps them.
+	 * 
+	 * @param cellSize - size of the grid cells, about the typical light
+	 *                   distance works well, 0 disables the tracking
+	 * @param listener - listener of the enter and exit events, may be null
+	 * 
+	 * <p>Default = 0
+	 */
+	public void setLightTracking(float cellSize, LightListener listener) {
+		final LightTracker old = lightTracker;
+		if (old != null && old.cellSize == cellSize) {
+			old.listener = listener;
+			return;
+		}
+
+		lightTracker = cellSize > 0f ?
+				new LightTracker(this, cellSize, listener) : null;
+		if (old == null) return;
+
+		for (TrackedPoint point : old.points) {
+			if (lightTracker != null) {
+				lightTracker.add(point);
+			} else {
+				point.lights.clear();
+			}
+		}
+		old.clear();
+	}
+
+	/**
+	 * Enables/disables transform only updates of the point and cone lights.
+	 * 
+	 * <p>If enabled lights check with a single query if anything in their
+	 * reach could occlude them. If not, their rays are not cast and their
+	 * meshes are built once around the origin and rendered moved and
+	 * rotated to the light position and direction, without vertex upload.
+	 * 
+	 * <p>Not used for lights with exact shadows or adaptive rays.
+	 * 
+	 * <p>Default = false
+	 */
+	public void setTransformOnlyUpdates(boolean enabled) {
+		transformOnlyUpdates = enabled;
+	}
+
+	/**
+	 * Enables/disables batched rendering of the lights.
+	 * 
+	 * <p>If enabled meshes of all rendered lights are collected into one
+	 * streaming buffer as indexed triangles and drawn with a single call,
+	 * instead of one or two calls per light.
+	 * 
+	 * <p>Not used with custom light shader, as it may need per light
+	 * uniforms.
+	 * 
+	 * <p>Default = false
+	 */
+	public void setBatchedRendering(boolean enabled) {
+		if (enabled && lightBatch == null) {
+			lightBatch = new LightBatch();
+		} else if (!enabled && lightBatch != null) {
+			lightBatch.dispose();
+			lightBatch = null;
+		}
+	}
+
+	/**
+	 * Enables/disables instanced rendering of the x-ray point and cone
+	 * lights.
+	 * 
+	 * <p>If enabled such lights don't build nor upload their own meshes,
+	 * all of them are drawn with a single call from a shared template fan
+	 * and their position, color, distance, direction and cone angle. Custom
+	 * light shader is not applied to them.
+	 * 
+	 * <p>Requires GL30, ignored otherwise.
+	 * 
+	 * <p>Default = false
+	 */
+	public void setInstancedRendering(boolean enabled) {
+		if (enabled && lightInstances == null && !headless &&
+				Gdx.gl30 != null) {
+			lightInstances = new LightInstances();
+		} else if (!enabled && lightInstances != null) {
+			lightInstances.dispose();
+			lightInstances = null;
+			// static lights meshes weren't updated while instanced
+			for (Light light : lightList) {
+				if (light.staticLight) light.dirty = true;
+			}
+			for (Light light : disabledLights) {
+				if (light.staticLight) light.dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * @return number of screen pixels per world unit for the combined
+	 * matrix set
+	 */
+	float getPixelScale() {
+		final float[] val = combined.val;
+		final int width = customViewport || headless ? viewportWidth :
+				Gdx.graphics.getWidth();
+		return (float) Math.sqrt(val[Matrix4.M00] * val[Matrix4.M00] +
+				val[Matrix4.M10] * val[Matrix4.M10]) * width * 0.5f;
+	}
+
+	/**
+	 * Enables/disables rays level of detail for point and cone lights.
+	 * 
+	 * <p>If enabled lights use only as many of their rays as needed to
+	 * keep rays ends given number of screen pixels apart on the light
+	 * circle, measured with the matrix set by setCombinedMatrix. Rays number
+	 * set for the light is the maximum, so the meshes are never
+	 * reallocated. Rays number grows as soon as needed but drops only after
+	 * a notable change, so it does not flicker while zooming.
+	 * 
+	 * @param pixelsPerRay - screen pixels between rays ends, 0 disables
+	 *                       level of detail
+	 * 
+	 * <p>Default = 0
+	 */
+	public void setRayLevelOfDetail(float pixelsPerRay) {
+		this.pixelsPerRay = Math.max(0f, pixelsPerRay);
+	}
+
+	/**
+	 * Sets maximum number of rays cast per update, 0 means no limit.
+	 * 
+	 * <p>If set lights are ordered by priority which grows with their size
+	 * on screen, closeness to the camera center and number of updates since
+	 * their last refresh. Lights are refreshed in that order until the
+	 * budget is spent, the rest keep their previous meshes and get higher
+	 * priority next time. At least one light is refreshed on each update.
+	 * 
+	 * <p>Default = 0
+	 */
+	public void setRayBudget(int rays) {
+		rayBudget = Math.max(0, rays);
+		if (rayBudget == 0) {
+			for (Light light : lightList) {
+				light.deferred = false;
+			}
+			// disabled lights are not scheduled again once enabled
+			for (Light light : disabledLights) {
+				light.deferred = false;
+			}
+		}
+	}
+
+	/**
+	 * Enables/disables skipping updates of settled lights.
+	 * 
+	 * <p>If enabled non static point and cone lights skip both ray casting
+	 * and mesh upload when they did not move and nothing in their reach
+	 * changed since their previous update. With incremental ray casting
+	 * enabled the changes are taken from the bodies journal, otherwise the
+	 * light is settled when its body and all non static bodies in its reach
+	 * are asleep and were asleep on the previous update too, and neither the
+	 * number of the world bodies nor the number of the fixtures in its reach
+	 * changed, so bodies created or destroyed in between are detected.
+	 * 
+	 * <p>Sleeping bodies moved with {@link com.badlogic.gdx.physics.box2d.Body#setTransform},
+	 * or created and destroyed in the same step so the counts don't change,
+	 * are not detected without the bodies journal, call
+	 * {@link #invalidateRays()} then.
+	 * 
+	 * <p>Default = false
+	 * 
+	 * @see #setIncrementalRayCasting(boolean)
+	 */
+	public void setSkipSettledLights(boolean skip) {
+		skipSettledLights = skip;
+	}
+
 	/**
 	 * Enables/disables shadows
 	 */
@@ -605,6 +1580,10 @@ public class RayHandler implements Disposable {
 	 */
 	public void setWorld(World world) {
 		this.world = world;
+		staticOccludersDirty = true;
+		if (bodyJournal != null) bodyJournal.clear();
+		if (fixtureCache != null) fixtureCache.clear();
+		invalidateRays();
 	}
 
 	/**
@@ -625,7 +1604,7 @@ public class RayHandler implements Disposable {
 	public void applyGammaCorrection(boolean gammaCorrectionWanted) {
 		gammaCorrection = gammaCorrectionWanted;
 		gammaCorrectionParameter = gammaCorrection ? GAMMA_COR : 1f;
-		lightMap.createShaders();
+		if (lightMap != null) lightMap.createShaders();
 	}
 
 	/**
@@ -637,7 +1616,7 @@ public class RayHandler implements Disposable {
 	 */
 	public void setDiffuseLight(boolean useDiffuse) {
 		isDiffuse = useDiffuse;
-		lightMap.createShaders();
+		if (lightMap != null) lightMap.createShaders();
 	}
 
 	public static boolean isDiffuseLight() {
@@ -705,7 +1684,7 @@ public class RayHandler implements Disposable {
 		pseudo3d = flag;
 		shadowColorInterpolation = interpolateShadows;
 
-		lightMap.createShaders();
+		if (lightMap != null) lightMap.createShaders();
 	}
 
 	/**
@@ -719,6 +1698,7 @@ public class RayHandler implements Disposable {
 	 * <p>Default = true
 	 */
 	public void setLightMapRendering(boolean isAutomatic) {
+		if (lightMap == null) return;
 		lightMap.lightMapDrawingDisabled = !isAutomatic;
 	}
 
@@ -729,6 +1709,7 @@ public class RayHandler implements Disposable {
 	 *         texture in your shaders
 	 */
 	public Texture getLightMapTexture() {
+		if (lightMap == null) return null;
 		return lightMap.frameBuffer.getColorBufferTexture();
 	}
 
@@ -738,6 +1719,7 @@ public class RayHandler implements Disposable {
 	 * @return FrameBuffer that contains lightMap
 	 */
 	public FrameBuffer getLightMapBuffer() {
+		if (lightMap == null) return null;
 		return lightMap.frameBuffer;
 	}
 }
@@ -7,6 +7,8 @@ public class RayHandlerOptions {
 	boolean pseudo3d = false;
 	boolean shadowColorInterpolation = false;
 
+	boolean headless = false;
+
 	public void setDiffuse (boolean diffuse) {
 		isDiffuse = diffuse;
 	}
@@ -23,4 +25,13 @@ public class RayHandlerOptions {
 		this.pseudo3d = pseudo3d;
 		this.shadowColorInterpolation = shadowColorInterpolation;
 	}
+
+	/**
+	 * Enables/disables headless mode, in which the rayHandler and its lights
+	 * only cast rays on update and allocate no GL resources, e.g. for line
+	 * of sight checks on a server. Rendering is not available then.
+	 */
+	public void setHeadless (boolean headless) {
+		this.headless = headless;
+	}
 }
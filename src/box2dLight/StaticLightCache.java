@@ -0,0 +1,299 @@
+package box2dLight;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.physics.box2d.BodyDef.BodyType;
+import com.badlogic.gdx.physics.box2d.Fixture;
+import com.badlogic.gdx.physics.box2d.QueryCallback;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.StreamUtils;
+
+/**
+ * Bakes ray casting results of static point and cone lights to a file and
+ * loads them back, so static lights do not need to cast their rays on
+ * every level load.
+ *
+ * <p>Each light is stored under a key hashed from its parameters, from
+ * the static fixtures of the world and from the other fixtures in its
+ * reach, so lights or bodies changed since baking are simply not loaded
+ * and cast their rays as usual. Identical lights get distinct keys by
+ * their order.
+ *
+ * <p>File layout (big endian): magic, version, lights count, then for each
+ * light its key, rays number and blocks of rays cos, sin, mx, my and f.
+ *
+ * <p>NOTE: not available on GWT
+ */
+public class StaticLightCache {
+
+	static final int MAGIC = 0x42324C42;
+	static final int VERSION = 2;
+
+	final RayHandler rayHandler;
+	final Array<PositionalLight> lights = new Array<PositionalLight>();
+	final LongArray lightKeys = new LongArray();
+	final LongMap<PositionalLight> keys = new LongMap<PositionalLight>();
+
+	/** Non static fixtures in reach of a light, hashed into its key **/
+	final OccluderTree dynamicOccluders = new OccluderTree();
+	final QueryCallback dynamicOccludersCallback = new QueryCallback() {
+		@Override
+		public boolean reportFixture(Fixture fixture) {
+			if (fixture.getBody().getType() != BodyType.StaticBody) {
+				dynamicOccluders.addFixture(fixture);
+			}
+			return true;
+		}
+	};
+	final Rectangle tmpBounds = new Rectangle();
+
+	public StaticLightCache(RayHandler rayHandler) {
+		this.rayHandler = rayHandler;
+	}
+
+	/**
+	 * Casts rays of all static point and cone lights of the rayHandler and
+	 * writes the results to given file
+	 *
+	 * @return number of baked lights
+	 */
+	public int bake(FileHandle file) {
+		collectLights();
+		collectKeys();
+
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(
+					new BufferedOutputStream(file.write(false)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(lights.size);
+			for (int i = 0; i < lights.size; i++) {
+				final PositionalLight light = lights.get(i);
+				cast(light);
+
+				final int rays = light.rayNum;
+				out.writeLong(lightKeys.get(i));
+				out.writeInt(rays);
+				writeFloats(out, light.cos, rays);
+				writeFloats(out, light.sin, rays);
+				writeFloats(out, light.mx, rays);
+				writeFloats(out, light.my, rays);
+				writeFloats(out, light.f, rays);
+			}
+		} catch (IOException e) {
+			throw new GdxRuntimeException("Couldn't bake lights to " + file, e);
+		} finally {
+			StreamUtils.closeQuietly(out);
+		}
+
+		final int count = lights.size;
+		keys.clear();
+		lightKeys.clear();
+		lights.clear();
+		return count;
+	}
+
+	/**
+	 * Casts all rays of the light, bypassing the shortcuts of its mesh
+	 * update which may leave them unset, e.g. for instanced lights
+	 */
+	void cast(PositionalLight light) {
+		light.deferred = false;
+		light.castFrame = -1;
+		light.prepareRays();
+		light.worldRayCasting = rayHandler.world != null &&
+				rayHandler.needsWorldRayCasting(light);
+		light.castRays();
+		if (!light.isInstanced()) light.setMesh();
+		light.uncast = false;
+		light.refreshFrame = rayHandler.updateFrame;
+		light.dirty = false;
+		rayHandler.staticLayerDirty = true;
+	}
+
+	/**
+	 * Loads ray casting results of static point and cone lights of the
+	 * rayHandler from given file, lights not found there are left as is
+	 *
+	 * <p>File is memory mapped if possible, read at once otherwise.
+	 *
+	 * @return number of loaded lights
+	 */
+	public int load(FileHandle file) {
+		if (!file.exists()) return 0;
+
+		ByteBuffer buffer;
+		try {
+			buffer = file.map();
+		} catch (GdxRuntimeException e) {
+			buffer = ByteBuffer.wrap(file.readBytes());
+		}
+
+		if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			return 0;
+		}
+
+		collectLights();
+		collectKeys();
+
+		int loaded = 0;
+		final int count = buffer.getInt();
+		for (int i = 0; i < count; i++) {
+			final long key = buffer.getLong();
+			final int rays = buffer.getInt();
+			final int next = buffer.position() + rays * 5 * 4;
+			final PositionalLight light = keys.remove(key);
+			if (light != null) {
+				light.ensureRayCapacity(rays);
+				light.rayNum = rays;
+				light.vertexNum = rays + 1;
+				FloatBuffer floats = buffer.asFloatBuffer();
+				floats.get(light.cos, 0, rays);
+				floats.get(light.sin, 0, rays);
+				floats.get(light.mx, 0, rays);
+				floats.get(light.my, 0, rays);
+				floats.get(light.f, 0, rays);
+				for (int n = 0; n < rays; n++) {
+					light.endX[n] = light.distance * light.cos[n];
+					light.endY[n] = light.distance * light.sin[n];
+				}
+				light.setMesh();
+				light.dirty = false;
+				light.refreshFrame = rayHandler.updateFrame;
+				loaded++;
+			}
+			buffer.position(next);
+		}
+
+		if (loaded > 0) rayHandler.invalidateStaticLightLayer();
+		keys.clear();
+		lightKeys.clear();
+		lights.clear();
+		return loaded;
+	}
+
+	void collectLights() {
+		lights.clear();
+		addStaticLights(rayHandler.lightList);
+		addStaticLights(rayHandler.disabledLights);
+	}
+
+	void addStaticLights(Array<Light> lightList) {
+		for (Light light : lightList) {
+			if (light.staticLight && light instanceof PositionalLight) {
+				lights.add((PositionalLight) light);
+			}
+		}
+	}
+
+	/**
+	 * Computes keys of the collected lights to {@link #lightKeys} and maps
+	 * them to the lights in {@link #keys}, identical lights are told apart
+	 * by rehashing their keys in order
+	 */
+	void collectKeys() {
+		final long occludersHash = getOccludersHash();
+		lightKeys.clear();
+		keys.clear();
+		for (PositionalLight light : lights) {
+			long key = getKey(light, occludersHash);
+			while (keys.containsKey(key)) key = hash(key, 1);
+			keys.put(key, light);
+			lightKeys.add(key);
+		}
+	}
+
+	/**
+	 * @return hash of the static fixtures geometry and filters
+	 */
+	long getOccludersHash() {
+		if (rayHandler.world == null) return 0;
+
+		final OccluderTree tree = new OccluderTree();
+		tree.buildStatic(rayHandler.world);
+		return hash(FNV_OFFSET, tree);
+	}
+
+	/**
+	 * @return hash of the non static fixtures in reach of the light, which
+	 * are cast against while baking too
+	 */
+	long getDynamicOccludersHash(PositionalLight light, long hash) {
+		if (rayHandler.world == null) return hash;
+
+		dynamicOccluders.clear();
+		light.getRayBounds(tmpBounds);
+		rayHandler.world.QueryAABB(dynamicOccludersCallback,
+				tmpBounds.x, tmpBounds.y,
+				tmpBounds.x + tmpBounds.width,
+				tmpBounds.y + tmpBounds.height);
+		hash = hash(hash, dynamicOccluders);
+		dynamicOccluders.clear();
+		return hash;
+	}
+
+	static long hash(long hash, OccluderTree tree) {
+		hash = hash(hash, tree.primCount);
+		for (int i = 0; i < tree.primCount * 4; i++) {
+			hash = hash(hash, tree.primData.items[i]);
+		}
+		for (int i = 0; i < tree.primCount * 2; i++) {
+			hash = hash(hash, tree.primInfo.items[i]);
+		}
+		for (int i = 0; i < tree.filters.size; i++) {
+			hash = hash(hash, tree.filters.items[i]);
+		}
+		return hash;
+	}
+
+	/**
+	 * @return key of the light parameters and occluders affecting its rays
+	 */
+	long getKey(PositionalLight light, long occludersHash) {
+		long hash = hash(occludersHash, light.getClass().getName().hashCode());
+		hash = getDynamicOccludersHash(light, hash);
+		hash = hash(hash, light.start.x);
+		hash = hash(hash, light.start.y);
+		hash = hash(hash, light.direction);
+		hash = hash(hash, light.distance);
+		hash = hash(hash, light.getArcHalfAngle());
+		hash = hash(hash, light.baseRayNum);
+		hash = hash(hash, light.xray ? 1 : 0);
+		hash = hash(hash, light.exactShadows ? 1 : 0);
+		hash = hash(hash, light.adaptiveRays ? 1 : 0);
+		hash = hash(hash, rayHandler.pseudo3d ? 1 : 0);
+		return hash(hash, light.getFilterHash());
+	}
+
+	static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	static final long FNV_PRIME = 0x100000001b3L;
+
+	static long hash(long hash, float value) {
+		return hash(hash, Float.floatToIntBits(value));
+	}
+
+	static long hash(long hash, int value) {
+		for (int i = 0; i < 4; i++) {
+			hash ^= (value >>> (i * 8)) & 0xff;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	static void writeFloats(DataOutputStream out, float[] values, int count)
+			throws IOException {
+		for (int i = 0; i < count; i++) {
+			out.writeFloat(values[i]);
+		}
+	}
+}
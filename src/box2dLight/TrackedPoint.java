@@ -0,0 +1,89 @@
+package box2dLight;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Point tracked by the rayHandler, which raises {@link LightListener}
+ * events when it enters or exits any light.
+ *
+ * <p>Points attached to a body follow its position, others are moved with
+ * {@link #setPosition(float, float)}. Lights are re-evaluated on each
+ * {@link RayHandler#update()} only for the points moved since the last one
+ * and for the points near the lights changed since the last one.
+ *
+ * @see RayHandler#track(float, float)
+ * @see RayHandler#track(Body)
+ */
+public class TrackedPoint {
+
+	/** Custom data of this point, e.g. its entity **/
+	public Object userData;
+
+	float x, y;
+	final Body body;
+	boolean moved = true;
+
+	/** Lights containing this point as of last update **/
+	final Array<Light> lights = new Array<Light>(false, 4);
+
+	/** Cell of the tracker grid **/
+	boolean inCell = false;
+	int cellX, cellY;
+
+	TrackedPoint(float x, float y, Body body) {
+		this.x = x;
+		this.y = y;
+		this.body = body;
+	}
+
+	/**
+	 * Moves this point, lights are re-evaluated on next update
+	 */
+	public void setPosition(float x, float y) {
+		if (x == this.x && y == this.y) return;
+
+		this.x = x;
+		this.y = y;
+		moved = true;
+	}
+
+	/**
+	 * Moves this point from the body position, if attached to a body
+	 */
+	void updateBody() {
+		if (body == null) return;
+
+		final Vector2 position = body.getPosition();
+		setPosition(position.x, position.y);
+	}
+
+	/** @return horizontal position in world coordinates **/
+	public float getX() {
+		return x;
+	}
+
+	/** @return vertical position in world coordinates **/
+	public float getY() {
+		return y;
+	}
+
+	/** @return the body this point follows, or null **/
+	public Body getBody() {
+		return body;
+	}
+
+	/**
+	 * @return lights containing this point as of last update, must not be
+	 * modified
+	 */
+	public Array<Light> getLights() {
+		return lights;
+	}
+
+	/** @return if any light contains this point as of last update **/
+	public boolean isLit() {
+		return lights.size > 0;
+	}
+}
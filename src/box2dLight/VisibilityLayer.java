@@ -0,0 +1,367 @@
+package box2dLight;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Bits;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.async.AsyncResult;
+import com.badlogic.gdx.utils.async.AsyncTask;
+
+/**
+ * Fog of war layer, rasterizes the polygons of a set of lights, e.g. the
+ * vision cones of one team, into packed bitsets of the currently visible
+ * and ever explored cells of a grid over given area.
+ *
+ * <p>On each {@link #update()} only the lights refreshed since the last one
+ * are rasterized again, in parallel if the rayHandler has parallel update
+ * enabled. Cells changed by the update are available as a bitset too, so
+ * only they need to be sent over network.
+ *
+ * <p>Call {@link #update()} after {@link RayHandler#update()}, polygons of
+ * the lights are read as of their last update. Culled lights are not
+ * updated, so disable culling if the layer covers more than the camera.
+ */
+public class VisibilityLayer {
+
+	final RayHandler rayHandler;
+	final float x, y, cellSize;
+	final int width, height;
+
+	/** Number of the lights covering each cell **/
+	final int[] counts;
+	final Bits visible;
+	final Bits explored;
+	final Bits changed;
+	final Bits previous;
+
+	final Array<LightCells> lights = new Array<LightCells>(false, 16);
+	final Array<LightCells> changedLights = new Array<LightCells>(false, 16);
+	final Array<RasterTask> rasterTasks = new Array<RasterTask>();
+	final Array<AsyncResult<Void>> rasterResults =
+			new Array<AsyncResult<Void>>();
+
+	/**
+	 * Creates fog of war layer over given area
+	 *
+	 * @param rayHandler - rayHandler of the lights, its executor is used
+	 *                     to rasterize them in parallel
+	 * @param x - left edge of the area in world coordinates
+	 * @param y - bottom edge of the area in world coordinates
+	 * @param width - number of the grid columns
+	 * @param height - number of the grid rows
+	 * @param cellSize - size of the grid cells in world units
+	 */
+	public VisibilityLayer(RayHandler rayHandler, float x, float y,
+			int width, int height, float cellSize) {
+		this.rayHandler = rayHandler;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.cellSize = cellSize;
+		counts = new int[width * height];
+		visible = new Bits(width * height);
+		explored = new Bits(width * height);
+		changed = new Bits(width * height);
+		previous = new Bits(width * height);
+	}
+
+	/**
+	 * Adds the light, its polygon is rasterized on next update while it's
+	 * active
+	 */
+	public void add(Light light) {
+		for (LightCells cells : lights) {
+			if (cells.light != light) continue;
+
+			cells.removed = false;
+			return;
+		}
+		lights.add(new LightCells(light));
+	}
+
+	/**
+	 * Removes the light, cells it covered are updated on next update
+	 */
+	public void remove(Light light) {
+		for (LightCells cells : lights) {
+			if (cells.light == light) cells.removed = true;
+		}
+	}
+
+	/**
+	 * Rasterizes the lights refreshed, moved, enabled or disabled since
+	 * last update and updates visible, explored and changed cells
+	 */
+	public void update() {
+		changedLights.clear();
+		for (LightCells cells : lights) {
+			final Light light = cells.light;
+			final boolean active = !cells.removed && light.isActive() &&
+					light.rayHandler != null;
+			if (!cells.removed && active == cells.active &&
+					(!active || light.refreshFrame == cells.frame)) {
+				continue;
+			}
+
+			cells.active = active;
+			cells.frame = light.refreshFrame;
+			changedLights.add(cells);
+		}
+
+		rasterize();
+
+		previous.clear();
+		previous.or(visible);
+		for (LightCells cells : changedLights) {
+			apply(cells.spans, -1);
+			final IntArray spans = cells.spans;
+			cells.spans = cells.newSpans;
+			cells.newSpans = spans;
+			apply(cells.spans, 1);
+			if (cells.removed) lights.removeValue(cells, true);
+		}
+		changedLights.clear();
+
+		changed.clear();
+		changed.or(visible);
+		changed.xor(previous);
+		explored.or(visible);
+	}
+
+	/**
+	 * Rasterizes the changed lights, spread over the rayHandler executor
+	 * threads if parallel update is enabled
+	 */
+	void rasterize() {
+		final int lightCount = changedLights.size;
+		final int taskCount = rayHandler.executor == null ? Math.min(1,
+				lightCount) : Math.min(rayHandler.updateThreads, lightCount);
+		rasterResults.clear();
+		try {
+			for (int i = 0; i < taskCount; i++) {
+				if (i >= rasterTasks.size) rasterTasks.add(new RasterTask());
+				RasterTask task = rasterTasks.get(i);
+				task.from = lightCount * i / taskCount;
+				task.to = lightCount * (i + 1) / taskCount;
+				// last chunk is processed on this thread
+				if (i < taskCount - 1) {
+					rasterResults.add(rayHandler.executor.submit(task));
+				} else {
+					task.call();
+				}
+			}
+			for (AsyncResult<Void> result : rasterResults) {
+				result.get();
+			}
+		} finally {
+			rasterResults.clear();
+		}
+	}
+
+	/** Adds the delta to the counts of the cells of given spans **/
+	void apply(IntArray spans, int delta) {
+		final int[] items = spans.items;
+		for (int i = 0; i < spans.size; i += 3) {
+			final int row = items[i] * width;
+			for (int index = row + items[i + 1]; index <= row + items[i + 2];
+					index++) {
+				counts[index] += delta;
+				if (counts[index] == 0) {
+					visible.clear(index);
+				} else if (delta > 0 && counts[index] == 1) {
+					visible.set(index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return if the cell at given point is currently visible, false
+	 * outside of the layer area
+	 */
+	public boolean isVisible(float x, float y) {
+		final int index = getCellIndex(x, y);
+		return index >= 0 && visible.get(index);
+	}
+
+	/**
+	 * @return if the cell at given point was visible at any update, false
+	 * outside of the layer area
+	 */
+	public boolean isExplored(float x, float y) {
+		final int index = getCellIndex(x, y);
+		return index >= 0 && explored.get(index);
+	}
+
+	/**
+	 * @return index of the cell at given point, row * width + column, or
+	 * -1 outside of the layer area
+	 */
+	public int getCellIndex(float x, float y) {
+		final int column = (int) Math.floor((x - this.x) / cellSize);
+		final int row = (int) Math.floor((y - this.y) / cellSize);
+		if (column < 0 || row < 0 || column >= width || row >= height) {
+			return -1;
+		}
+		return row * width + column;
+	}
+
+	/**
+	 * @return bitset of the currently visible cells, indexed by
+	 * {@link #getCellIndex(float, float)}, must not be modified
+	 */
+	public Bits getVisible() {
+		return visible;
+	}
+
+	/**
+	 * @return bitset of the cells visible at any update, must not be
+	 * modified
+	 */
+	public Bits getExplored() {
+		return explored;
+	}
+
+	/**
+	 * @return bitset of the cells which became visible or hidden by last
+	 * update, must not be modified
+	 */
+	public Bits getChanged() {
+		return changed;
+	}
+
+	/**
+	 * Adds indices of the cells which became visible or hidden by last
+	 * update to given array
+	 *
+	 * @return the array for chaining
+	 */
+	public IntArray getChangedCells(IntArray out) {
+		for (int i = changed.nextSetBit(0); i >= 0;
+				i = changed.nextSetBit(i + 1)) {
+			out.add(i);
+		}
+		return out;
+	}
+
+	/** Forgets all explored cells, which are not currently visible **/
+	public void clearExplored() {
+		explored.clear();
+		explored.or(visible);
+	}
+
+	/** @return number of the grid columns **/
+	public int getWidth() {
+		return width;
+	}
+
+	/** @return number of the grid rows **/
+	public int getHeight() {
+		return height;
+	}
+
+	/** @return size of the grid cells in world units **/
+	public float getCellSize() {
+		return cellSize;
+	}
+
+	/** Cells covered by a light as of its last rasterization **/
+	static class LightCells {
+		final Light light;
+		boolean active = false;
+		boolean removed = false;
+		int frame = -1;
+
+		/** Covered cells as row, first and last column triplets **/
+		IntArray spans = new IntArray();
+		IntArray newSpans = new IntArray();
+
+		float[] polygon = new float[0];
+		final FloatArray crossings = new FloatArray();
+
+		LightCells(Light light) {
+			this.light = light;
+		}
+	}
+
+	/**
+	 * Rasterizes the light polygon to the new spans, cells are covered if
+	 * their center is inside of it
+	 */
+	void rasterize(LightCells cells) {
+		final IntArray spans = cells.newSpans;
+		spans.clear();
+		if (!cells.active) return;
+
+		final Light light = cells.light;
+		final int count = light.getPolygonVertexCount();
+		if (count < 3) return;
+
+		if (cells.polygon.length < count * 2) {
+			cells.polygon = new float[count * 2];
+		}
+		final float[] polygon = cells.polygon;
+		light.getPolygon(polygon);
+
+		float minY = Float.MAX_VALUE;
+		float maxY = -Float.MAX_VALUE;
+		for (int i = 1; i < count * 2; i += 2) {
+			minY = Math.min(minY, polygon[i]);
+			maxY = Math.max(maxY, polygon[i]);
+		}
+		final int fromRow = Math.max(0,
+				(int) Math.ceil((minY - y) / cellSize - 0.5f));
+		final int toRow = Math.min(height - 1,
+				(int) Math.floor((maxY - y) / cellSize - 0.5f));
+
+		final FloatArray crossings = cells.crossings;
+		for (int row = fromRow; row <= toRow; row++) {
+			final float centerY = y + (row + 0.5f) * cellSize;
+
+			// crossings of the row center line with the polygon edges
+			crossings.clear();
+			float x1 = polygon[count * 2 - 2];
+			float y1 = polygon[count * 2 - 1];
+			for (int i = 0; i < count * 2; i += 2) {
+				final float x2 = polygon[i];
+				final float y2 = polygon[i + 1];
+				if ((y1 <= centerY && centerY < y2) ||
+						(y2 <= centerY && centerY < y1)) {
+					crossings.add((x2 - x1) / (y2 - y1) * (centerY - y1) + x1);
+				}
+				x1 = x2;
+				y1 = y2;
+			}
+			crossings.sort();
+
+			// cells with the center between pairs of crossings are inside
+			final float[] items = crossings.items;
+			for (int i = 0; i + 1 < crossings.size; i += 2) {
+				final int from = Math.max(0,
+						(int) Math.ceil((items[i] - x) / cellSize - 0.5f));
+				final int to = Math.min(width - 1,
+						(int) Math.ceil((items[i + 1] - x) / cellSize - 0.5f) - 1);
+				if (from > to) continue;
+
+				spans.add(row);
+				spans.add(from);
+				spans.add(to);
+			}
+		}
+	}
+
+	/** Rasterizes a range of the changed lights **/
+	class RasterTask implements AsyncTask<Void> {
+		int from;
+		int to;
+
+		@Override
+		public Void call() {
+			for (int i = from; i < to; i++) {
+				rasterize(changedLights.get(i));
+			}
+			return null;
+		}
+	}
+}
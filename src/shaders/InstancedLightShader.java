@@ -0,0 +1,59 @@
+package shaders;
+
+import box2dLight.RayHandler;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
+
+/**
+ * Shader of the instanced x-ray point and cone lights, builds each light
+ * fan from a shared template and per-instance position, color, radius,
+ * direction and cone half angle
+ */
+public final class InstancedLightShader {
+	static final public ShaderProgram createInstancedLightShader() {
+		String gamma = "";
+		if (RayHandler.getGammaCorrection())
+			gamma = "sqrt";
+
+		final String vertexShader =
+				"attribute vec4 vertex_positions;\n" //
+				+ "attribute vec4 i_position;\n" //
+				+ "attribute vec4 i_color;\n" //
+				+ "attribute vec4 i_params;\n" //
+				+ "uniform mat4 u_projTrans;\n" //
+				+ "varying vec4 v_color;\n" //
+				+ "void main()\n" //
+				+ "{\n" //
+				+ "   float angle = i_params.y + vertex_positions.x * i_params.z;\n" //
+				+ "   float radius = (1.0 - vertex_positions.y) * i_params.x;\n" //
+				+ "   vec2 position = i_position.xy + radius * vec2(cos(angle), sin(angle));\n" //
+				+ "   v_color = vertex_positions.y * i_color;\n" //
+				+ "   gl_Position = u_projTrans * vec4(position, 0.0, 1.0);\n" //
+				+ "}\n";
+		final String fragmentShader = "#ifdef GL_ES\n" //
+			+ "precision lowp float;\n" //
+			+ "#define MED mediump\n"
+			+ "#else\n"
+			+ "#define MED \n"
+			+ "#endif\n" //
+				+ "varying vec4 v_color;\n" //
+				+ "void main()\n"//
+				+ "{\n" //
+				+ "  gl_FragColor = "+gamma+"(v_color);\n" //
+				+ "}";
+
+		ShaderProgram.pedantic = false;
+		ShaderProgram lightShader = new ShaderProgram(vertexShader,
+				fragmentShader);
+		if (!lightShader.isCompiled()) {
+			lightShader = new ShaderProgram("#version 330 core\n" +vertexShader,
+					"#version 330 core\n" +fragmentShader);
+			if(!lightShader.isCompiled()){
+				Gdx.app.log("ERROR", lightShader.getLog());
+			}
+		}
+
+		return lightShader;
+	}
+}
@@ -5,6 +5,15 @@ import box2dLight.RayHandler;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 
+/**
+ * Default light shader.
+ *
+ * <p>Vertex colors are multiplied by the {@code uniform vec4 u_lightColor},
+ * which the rayHandler sets to each light color, so meshes of the lights
+ * are built white. It is set to white here, so the shader also works for
+ * meshes carrying the light color in their vertices, e.g. when used as a
+ * base of a custom light shader.
+ */
 public final class LightShader {
 	static final public ShaderProgram createLightShader() {
 		String gamma = ""; 
@@ -16,10 +25,11 @@ public final class LightShader {
 				+ "attribute vec4 quad_colors;\n" //
 				+ "attribute float s;\n"
 				+ "uniform mat4 u_projTrans;\n" //
+				+ "uniform vec4 u_lightColor;\n" //
 				+ "varying vec4 v_color;\n" //				
 				+ "void main()\n" //
 				+ "{\n" //
-				+ "   v_color = s * quad_colors;\n" //				
+				+ "   v_color = s * quad_colors * u_lightColor;\n" //				
 				+ "   gl_Position =  u_projTrans * vertex_positions;\n" //
 				+ "}\n";
 		final String fragmentShader = "#ifdef GL_ES\n" //
@@ -44,6 +54,11 @@ public final class LightShader {
 				Gdx.app.log("ERROR", lightShader.getLog());
 			}
 		}
+		// uniforms default to 0, which would render all lights black
+		if (lightShader.isCompiled()) {
+			lightShader.bind();
+			lightShader.setUniformf("u_lightColor", 1f, 1f, 1f, 1f);
+		}
 
 		return lightShader;
 	}
@@ -0,0 +1,109 @@
+package tests;
+
+import java.lang.management.ManagementFactory;
+
+import box2dLight.ConeLight;
+import box2dLight.LightData;
+import box2dLight.PointLight;
+import box2dLight.RayHandler;
+import box2dLight.RayHandlerOptions;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.BodyDef;
+import com.badlogic.gdx.physics.box2d.Box2D;
+import com.badlogic.gdx.physics.box2d.CircleShape;
+import com.badlogic.gdx.physics.box2d.PolygonShape;
+import com.badlogic.gdx.physics.box2d.World;
+
+/**
+ * Allocation regression check of the pseudo 3d dynamic shadows, runs
+ * moving lights among shadow casting bodies in a headless rayHandler and
+ * fails if the steady state updates allocate anything.
+ *
+ * <p>Needs a HotSpot based JVM for the per thread allocation counter.
+ */
+public class AllocationTest {
+
+	static final int WARM_UP_FRAMES = 200;
+	static final int MEASURED_FRAMES = 200;
+
+	public static void main(String[] argv) {
+		Box2D.init();
+		final World world = new World(new Vector2(0, 0), true);
+		createBodies(world);
+
+		final RayHandlerOptions options = new RayHandlerOptions();
+		options.setHeadless(true);
+		options.setPseudo3d(true, true);
+		final RayHandler rayHandler = new RayHandler(world, options);
+		rayHandler.setCulling(false);
+		final PointLight pointLight =
+				new PointLight(rayHandler, 128, null, 20f, 0f, 0f);
+		final ConeLight coneLight =
+				new ConeLight(rayHandler, 64, null, 25f, 0f, 0f, 0f, 45f);
+
+		final com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long thread = Thread.currentThread().getId();
+
+		for (int i = 0; i < WARM_UP_FRAMES; i++) {
+			step(rayHandler, pointLight, coneLight, i);
+		}
+
+		// the counter itself may allocate, measure its own cost first
+		final long start = threads.getThreadAllocatedBytes(thread);
+		final long overhead = threads.getThreadAllocatedBytes(thread) - start;
+
+		final long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < MEASURED_FRAMES; i++) {
+			step(rayHandler, pointLight, coneLight, WARM_UP_FRAMES + i);
+		}
+		final long allocated =
+				threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+		rayHandler.dispose();
+		world.dispose();
+
+		if (allocated > 0) {
+			System.err.println("Steady state updates allocated " + allocated +
+					" bytes in " + MEASURED_FRAMES + " frames");
+			System.exit(1);
+		}
+		System.out.println("No allocations in " + MEASURED_FRAMES + " frames");
+	}
+
+	/** Moves the lights along a loop, so rays and shadows are rebuilt **/
+	static void step(RayHandler rayHandler, PointLight pointLight,
+			ConeLight coneLight, int frame) {
+		// the loop repeats, so warm up covers all the positions
+		final float angle = (frame % 100) * MathUtils.PI2 / 100f;
+		pointLight.setPosition(MathUtils.cos(angle) * 4f,
+				MathUtils.sin(angle) * 4f);
+		coneLight.setPosition(-MathUtils.cos(angle) * 3f,
+				-MathUtils.sin(angle) * 3f);
+		coneLight.setDirection(angle * MathUtils.radiansToDegrees);
+		rayHandler.update();
+	}
+
+	/** Creates a ring of shadow casting boxes and circles **/
+	static void createBodies(World world) {
+		final BodyDef def = new BodyDef();
+		def.type = BodyDef.BodyType.StaticBody;
+		final PolygonShape box = new PolygonShape();
+		box.setAsBox(0.5f, 0.5f);
+		final CircleShape circle = new CircleShape();
+		circle.setRadius(0.5f);
+		for (int i = 0; i < 16; i++) {
+			final float angle = i * MathUtils.PI2 / 16f;
+			def.position.set(MathUtils.cos(angle) * 8f,
+					MathUtils.sin(angle) * 8f);
+			final Body body = world.createBody(def);
+			body.createFixture(i % 2 == 0 ? box : circle, 0f)
+					.setUserData(new LightData(1f));
+		}
+		box.dispose();
+		circle.dispose();
+	}
+}
@@ -0,0 +1,95 @@
+package tests;
+
+import box2dLight.Light;
+import box2dLight.PointLight;
+import box2dLight.RayHandler;
+import box2dLight.RayHandlerOptions;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Box2D;
+import com.badlogic.gdx.physics.box2d.World;
+
+/**
+ * Ray budget regression check, runs static lights over a budget which fits
+ * only one of them in a headless rayHandler and fails if any deferred light
+ * is not refreshed by the next update.
+ */
+public class RayBudgetTest {
+
+	static final int RAYS = 32;
+	static final float DISTANCE = 5f;
+
+	public static void main(String[] argv) {
+		Box2D.init();
+		final World world = new World(new Vector2(0, 0), true);
+
+		final RayHandlerOptions options = new RayHandlerOptions();
+		options.setHeadless(true);
+		final RayHandler rayHandler = new RayHandler(world, options);
+		rayHandler.setCulling(false);
+		rayHandler.setRayBudget(RAYS);
+		final PointLight first =
+				new PointLight(rayHandler, RAYS, null, DISTANCE, 0f, 0f);
+		final PointLight second =
+				new PointLight(rayHandler, RAYS, null, DISTANCE, 20f, 0f);
+		first.setStaticLight(true);
+		second.setStaticLight(true);
+
+		boolean passed = true;
+
+		// only one light fits the budget, the other one is deferred
+		rayHandler.update();
+		rayHandler.update();
+		passed &= check("new lights", first, 0f, 0f);
+		passed &= check("new lights", second, 20f, 0f);
+
+		first.setPosition(0f, 10f);
+		second.setPosition(20f, 10f);
+		rayHandler.update();
+		rayHandler.update();
+		passed &= check("moved lights", first, 0f, 10f);
+		passed &= check("moved lights", second, 20f, 10f);
+
+		// lights deferred while disabled are refreshed without the budget
+		first.setPosition(0f, 20f);
+		second.setPosition(20f, 20f);
+		rayHandler.update();
+		first.setActive(false);
+		second.setActive(false);
+		rayHandler.setRayBudget(0);
+		first.setActive(true);
+		second.setActive(true);
+		rayHandler.update();
+		passed &= check("re-enabled lights", first, 0f, 20f);
+		passed &= check("re-enabled lights", second, 20f, 20f);
+
+		rayHandler.dispose();
+		world.dispose();
+
+		if (!passed) System.exit(1);
+		System.out.println("Deferred lights refreshed on next update");
+	}
+
+	/**
+	 * @return if the light polygon, with nothing in reach a circle, is
+	 * centered at given position
+	 */
+	static boolean check(String name, Light light, float x, float y) {
+		final int count = light.getPolygonVertexCount();
+		final float[] vertices = new float[count * 2];
+		light.getPolygon(vertices);
+		float centerX = 0f;
+		float centerY = 0f;
+		for (int i = 0; i < count * 2; i += 2) {
+			centerX += vertices[i] / count;
+			centerY += vertices[i + 1] / count;
+		}
+		if (Math.abs(centerX - x) < 0.01f * DISTANCE &&
+				Math.abs(centerY - y) < 0.01f * DISTANCE) {
+			return true;
+		}
+		System.err.println(name + ": light at " + x + ", " + y +
+				" has polygon centered at " + centerX + ", " + centerY);
+		return false;
+	}
+}